@@ -0,0 +1,73 @@
+package com.siddhusathu20.jal;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Scores are JAL function calls per second; with -prof gc, gc.alloc.rate.norm is bytes per call
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CallBenchmark {
+    @Param({"tree", "vm"})
+    public String backend;
+
+    List<Statement> statements;
+    Prototype script;
+    List<Statement> leafStatements;
+    Prototype leafScript;
+    List<Statement> methodStatements;
+    Prototype methodScript;
+
+    @Setup
+    public void setup() {
+        statements = Workloads.parse(Workloads.CALLS);
+        script = new Compiler().compile(statements);
+        leafStatements = Workloads.parse(Workloads.LEAF_CALLS);
+        leafScript = new Compiler().compile(leafStatements);
+        methodStatements = Workloads.parse(Workloads.METHOD_CALLS);
+        methodScript = new Compiler().compile(methodStatements);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(Workloads.CALLS_PER_RUN)
+    public Object calls() {
+        return run(statements, script);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(Workloads.LEAF_CALLS_PER_RUN)
+    public Object leafCalls() {
+        return run(leafStatements, leafScript);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(Workloads.METHOD_CALLS_PER_RUN)
+    public Object methodCalls() {
+        return run(methodStatements, methodScript);
+    }
+
+    Object run(List<Statement> statements, Prototype script) {
+        Evaluator evaluator = new Evaluator();
+        if (backend.equals("vm"))
+            new VM(evaluator).interpret(script);
+        else
+            evaluator.interpret(statements);
+        return evaluator.globals.vars.get("result");
+    }
+}
@@ -0,0 +1,47 @@
+package com.siddhusathu20.jal;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Run with -prof gc to compare gc.alloc.rate.norm (bytes per op) between revisions
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FibonacciBenchmark {
+    @Param({"tree", "vm"})
+    public String backend;
+
+    List<Statement> statements;
+    Prototype script;
+
+    @Setup
+    public void setup() {
+        statements = Workloads.parse(Workloads.FIBONACCI);
+        script = new Compiler().compile(statements);
+    }
+
+    @Benchmark
+    public Object fibonacci() {
+        Evaluator evaluator = new Evaluator();
+        if (backend.equals("vm"))
+            new VM(evaluator).interpret(script);
+        else
+            evaluator.interpret(statements);
+        return evaluator.globals.vars.get("result");
+    }
+}
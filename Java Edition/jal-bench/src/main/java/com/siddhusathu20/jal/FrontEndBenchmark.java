@@ -0,0 +1,74 @@
+package com.siddhusathu20.jal;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Each front-end stage on its own over the sample-script workloads: lexing a source, parsing
+// already lexed tokens and resolving an already parsed tree. Run with -prof gc for bytes per op.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FrontEndBenchmark {
+    @Param({"fibonacci", "classes", "closures", "arrays"})
+    public String workload;
+
+    String src;
+    List<Token> tokens;
+    List<Statement> statements;
+
+    // Hands out tokens lexed in advance, so parse() measures the parser alone
+    static class Replay extends Lexer {
+        final List<Token> tokens;
+        int next = 0;
+
+        Replay(List<Token> tokens) {
+            super("");
+            this.tokens = tokens;
+        }
+
+        @Override
+        Token next() {
+            return tokens.get(Math.min(next++, tokens.size() - 1));
+        }
+    }
+
+    @Setup
+    public void setup() {
+        src = Workloads.named(workload);
+        tokens = new Lexer(src).scan();
+        statements = Workloads.parse(src);
+    }
+
+    @Benchmark
+    public List<Token> lex() {
+        return new Lexer(src).scan();
+    }
+
+    @Benchmark
+    public List<Statement> parse() {
+        return new Parser(new Replay(tokens)).parse();
+    }
+
+    // Resolving writes the same slots and depths into the tree every time, so it can be reused
+    @Benchmark
+    public Resolver resolve() {
+        Resolver resolver = new Resolver();
+        resolver.resolve(statements);
+        return resolver;
+    }
+}
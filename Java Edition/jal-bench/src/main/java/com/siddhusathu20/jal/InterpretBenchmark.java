@@ -0,0 +1,51 @@
+package com.siddhusathu20.jal;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Whole runs of the sample-script workloads on a fresh interpreter, on either backend.
+// Run with -prof gc for bytes per op.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InterpretBenchmark {
+    @Param({"fibonacci", "classes", "closures", "arrays"})
+    public String workload;
+
+    @Param({"tree", "vm"})
+    public String backend;
+
+    List<Statement> statements;
+    Prototype script;
+
+    @Setup
+    public void setup() {
+        statements = Workloads.parse(Workloads.named(workload));
+        script = new Compiler().compile(statements);
+    }
+
+    @Benchmark
+    public Object interpret() {
+        Evaluator evaluator = new Evaluator();
+        if (backend.equals("vm"))
+            new VM(evaluator).interpret(script);
+        else
+            evaluator.interpret(statements);
+        return evaluator.globals.vars.get("result");
+    }
+}
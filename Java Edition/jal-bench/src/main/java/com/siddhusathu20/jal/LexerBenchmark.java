@@ -0,0 +1,54 @@
+package com.siddhusathu20.jal;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Lexing throughput; each operation scans 1 MB of source, so ops/s reads as MB/s
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LexerBenchmark {
+    // "string" lexes a String; "buffer" a CharBuffer, as Main does with a decoded non-ASCII script;
+    // "mapped" a MappedSource over a direct buffer, as Main does with a mapped ASCII script
+    @Param({"string", "buffer", "mapped"})
+    public String source;
+
+    CharSequence src;
+
+    @Setup
+    public void setup() {
+        if (source.equals("buffer")) {
+            src = CharBuffer.wrap(Workloads.LEXING.toCharArray());
+        } else if (source.equals("mapped")) {
+            byte[] bytes = Workloads.LEXING.getBytes(StandardCharsets.US_ASCII);
+            ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length);
+            buffer.put(bytes).flip();
+            src = new MappedSource(buffer);
+        } else {
+            src = Workloads.LEXING;
+        }
+    }
+
+    @Benchmark
+    public List<Token> lex() {
+        return new Lexer(src).scan();
+    }
+}
@@ -0,0 +1,64 @@
+package com.siddhusathu20.jal;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Time from a mapped 1 MB script to a resolved tree: lexing, parsing and resolving it (cold)
+// against loading the tree from its .jalc cache (cached)
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StartupBenchmark {
+    Path dir;
+    String path;
+    ByteBuffer bytes;
+
+    @Setup
+    public void setup() throws IOException {
+        dir = Files.createTempDirectory("jal-startup");
+        path = dir.resolve("script.jal").toString();
+        Files.writeString(Path.of(path), Workloads.LEXING);
+        bytes = Main.map(path);
+        AstCache.store(path, bytes, cold());
+        if (cached() == null)
+            throw new IllegalStateException("Benchmark script was not cached");
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(AstCache.path(path));
+        Files.deleteIfExists(Path.of(path));
+        Files.deleteIfExists(dir);
+    }
+
+    @Benchmark
+    public List<Statement> cold() throws IOException {
+        List<Statement> statements = new Parser(new Lexer(Main.source(bytes))).parse();
+        new Resolver().resolve(statements);
+        return statements;
+    }
+
+    @Benchmark
+    public List<Statement> cached() {
+        return AstCache.load(path, bytes);
+    }
+}
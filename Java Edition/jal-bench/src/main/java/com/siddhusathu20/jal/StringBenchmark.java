@@ -0,0 +1,47 @@
+package com.siddhusathu20.jal;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Time to build a 1 MB string with '+' in a loop
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StringBenchmark {
+    @Param({"tree", "vm"})
+    public String backend;
+
+    List<Statement> statements;
+    Prototype script;
+
+    @Setup
+    public void setup() {
+        statements = Workloads.parse(Workloads.STRING_BUILD);
+        script = new Compiler().compile(statements);
+    }
+
+    @Benchmark
+    public Object buildString() {
+        Evaluator evaluator = new Evaluator();
+        if (backend.equals("vm"))
+            new VM(evaluator).interpret(script);
+        else
+            evaluator.interpret(statements);
+        return evaluator.globals.vars.get("result");
+    }
+}
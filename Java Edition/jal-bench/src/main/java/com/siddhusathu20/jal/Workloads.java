@@ -0,0 +1,194 @@
+package com.siddhusathu20.jal;
+
+import java.util.List;
+
+// JAL sources used by the benchmarks, adapted from the sample scripts so they run without input or output
+final class Workloads {
+    static final String FIBONACCI =
+        "def fibonacci(n) {\n" +
+        "    if n <= 1 then return n\n" +
+        "    return fibonacci(n - 2) + fibonacci(n - 1)\n" +
+        "}\n" +
+        "let result = 0\n" +
+        "for (let i = 0; i < 20; i = i + 1)\n" +
+        "    result = fibonacci(i)\n";
+
+    // 1000 calls of depth(30), each returning from inside nested blocks and a loop
+    static final int CALLS_PER_RUN = 1000 * 31;
+    static final String CALLS =
+        "def depth(n) {\n" +
+        "    if n == 0 then return 0\n" +
+        "    while true do {\n" +
+        "        if n > 0 then {\n" +
+        "            return depth(n - 1) + 1\n" +
+        "        }\n" +
+        "    }\n" +
+        "}\n" +
+        "let result = 0\n" +
+        "do 1000 times result = result + depth(30)\n";
+
+    // Non-recursive calls whose arguments and results never leave the boxed-number cache
+    static final int LEAF_CALLS_PER_RUN = 10000;
+    static final String LEAF_CALLS =
+        "def add(a, b) {\n" +
+        "    let sum = a + b\n" +
+        "    return sum\n" +
+        "}\n" +
+        "let result = 0\n" +
+        "do 10000 times result = add(1, 2)\n";
+
+    // Each p.add(q) makes two method calls, one of them on an argument
+    static final int METHOD_CALLS_PER_RUN = 2 * 10000;
+    static final String METHOD_CALLS =
+        "let result = 0\n" +
+        "let p = none\n" +
+        "let q = none\n" +
+        "class Point {\n" +
+        "    def constructor(x, y) {\n" +
+        "        self.x = x\n" +
+        "        self.y = y\n" +
+        "    }\n" +
+        "    def sum() {\n" +
+        "        return self.x + self.y\n" +
+        "    }\n" +
+        "    def add(o) {\n" +
+        "        return self.x + o.sum()\n" +
+        "    }\n" +
+        "}\n" +
+        "p = Point(1, 2)\n" +
+        "q = Point(3, 4)\n" +
+        "do 10000 times result = p.add(q)\n";
+
+    // Instances with three fields each, assigned in the constructor
+    static final int OBJECTS_PER_RUN = 10000;
+    static final String OBJECTS =
+        "let result = none\n" +
+        "class Vec {\n" +
+        "    def constructor(x, y, z) {\n" +
+        "        self.x = x\n" +
+        "        self.y = y\n" +
+        "        self.z = z\n" +
+        "    }\n" +
+        "}\n" +
+        "do 10000 times result = Vec(1, 2, 3)\n";
+
+    // Appends 64-character chunks up to 1 MB, then compares the result so it is flattened
+    static final String STRING_BUILD =
+        "let chunk = \"0123456789abcdef0123456789abcdef0123456789abcdef0123456789abcdef\"\n" +
+        "let s = \"\"\n" +
+        "do 16384 times s = s + chunk\n" +
+        "let result = s == \"\"\n";
+
+    // Classes.jal without output: construction, inherited and overridden methods, super calls
+    static final String CLASSES =
+        "let result = 0\n" +
+        "class TestCls {\n" +
+        "    def constructor(num1, num2) {\n" +
+        "        self.num2 = num1\n" +
+        "        self.num1 = num2\n" +
+        "        self.hello = none\n" +
+        "    }\n" +
+        "\n" +
+        "    def my_method(x) {\n" +
+        "        return x + 2\n" +
+        "    }\n" +
+        "\n" +
+        "    def say_hello() {\n" +
+        "        return self.hello\n" +
+        "    }\n" +
+        "}\n" +
+        "\n" +
+        "class SecondTest inherits TestCls {\n" +
+        "    def five_method() {\n" +
+        "        return self.my_method(5)\n" +
+        "    }\n" +
+        "\n" +
+        "    def say_hello() {\n" +
+        "        if self.hello == none then self.hello = \"ahoy\"\n" +
+        "        return super.say_hello()\n" +
+        "    }\n" +
+        "}\n" +
+        "\n" +
+        "do 1000 times {\n" +
+        "    let inst = TestCls(2, 3)\n" +
+        "    result = inst.num1 + inst.num2 + inst.my_method(5)\n" +
+        "    let i2 = SecondTest(5, 7)\n" +
+        "    result = result + i2.five_method()\n" +
+        "    i2.say_hello()\n" +
+        "}\n";
+
+    // Closures.jal without output: each counter closes over its own captured variable
+    static final String CLOSURES =
+        "let result = 0\n" +
+        "def makeCounter() {\n" +
+        "    let num = 0\n" +
+        "    def count() {\n" +
+        "        num = num + 1\n" +
+        "        return num\n" +
+        "    }\n" +
+        "    return count\n" +
+        "}\n" +
+        "\n" +
+        "do 1000 times {\n" +
+        "    let counter = makeCounter()\n" +
+        "    counter()\n" +
+        "    counter()\n" +
+        "    result = result + counter()\n" +
+        "}\n";
+
+    // Arrays.jal without output: literals, indexing, index assignment and concatenation
+    static final String ARRAYS =
+        "let result = 0\n" +
+        "do 1000 times {\n" +
+        "    let arr = [1, 2, 3, 4, 5, \"abc\", none]\n" +
+        "    arr[2] = 7\n" +
+        "    arr = arr + [8, 9]\n" +
+        "    if arr[3] % 2 == 0 then result = result + arr[2]\n" +
+        "    result = result + arr[4] % 2 + arr[0] % 2 + len(arr)\n" +
+        "}\n";
+
+    // The sample-script workloads by the names the suites use as a @Param
+    static String named(String name) {
+        switch (name) {
+            case "fibonacci":
+                return FIBONACCI;
+            case "classes":
+                return CLASSES;
+            case "closures":
+                return CLOSURES;
+            case "arrays":
+                return ARRAYS;
+            default:
+                throw new IllegalArgumentException("Unknown workload " + name);
+        }
+    }
+
+    // Source text for lexing: the workloads above plus comments and escaped strings, repeated and
+    // padded with spaces to exactly LEXING_BYTES of ASCII
+    static final int LEXING_BYTES = 1 << 20;
+    static final String LEXING = lexingSource();
+
+    static String lexingSource() {
+        String chunk =
+            "# Sample scripts, concatenated\n" +
+            FIBONACCI + CALLS + LEAF_CALLS + METHOD_CALLS + OBJECTS + STRING_BUILD +
+            "let message = \"tab\\there, \\\"quoted\\\" and a newline\\n\"\n" +
+            "let ratio = 3.14159 * 2.5 - 0.001\n";
+        StringBuilder src = new StringBuilder(LEXING_BYTES);
+        while (src.length() + chunk.length() <= LEXING_BYTES)
+            src.append(chunk);
+        while (src.length() < LEXING_BYTES)
+            src.append(' ');
+        return src.toString();
+    }
+
+    private Workloads() {}
+
+    static List<Statement> parse(String src) {
+        List<Statement> statements = new Parser(new Lexer(src)).parse();
+        new Resolver().resolve(statements);
+        if (Run.current().errored)
+            throw new IllegalStateException("Benchmark workload failed to compile");
+        return statements;
+    }
+}
@@ -0,0 +1,47 @@
+#!/bin/sh
+# Times whole interpreter runs from JVM start to exit, which JMH cannot measure from inside a JVM:
+#   cold      no class data sharing at all
+#   jdk-cds   the JDK's default archive, which covers JDK classes only
+#   app-cds   the archive from ../jal/bin/train-cds, which adds the interpreter's classes
+# Usage: ./startup.sh [runs] [script.jal]; by default 20 runs of a one-line println script.
+set -e
+runs="${1:-20}"
+home="$(cd "$(dirname "$0")/../jal" && pwd)"
+java="${JAVA_HOME:+$JAVA_HOME/bin/}java"
+script="$2"
+if [ -z "$script" ]; then
+    script="$(mktemp -d)/hello.jal"
+    echo 'println("hi")' > "$script"
+fi
+
+# Where train-cds keeps the archive, with the copy of the jar it was made from
+cds="$home/target"
+case "$cds" in *" "*) cds="${XDG_CACHE_HOME:-$HOME/.cache}/jal/$(printf %s "$home" | cksum | cut -d' ' -f1)" ;; esac
+
+time_runs() {
+    name="$1"
+    jar="$2"
+    shift 2
+    # One untimed run first, so the file cache is warm for every mode
+    "$java" "$@" -jar "$jar" --no-cache "$script" < /dev/null > /dev/null
+    total=0
+    best=
+    i=0
+    while [ $i -lt "$runs" ]; do
+        start=$(date +%s%N)
+        "$java" "$@" -jar "$jar" --no-cache "$script" < /dev/null > /dev/null
+        ms=$((($(date +%s%N) - start) / 1000000))
+        total=$((total + ms))
+        if [ -z "$best" ] || [ $ms -lt "$best" ]; then best=$ms; fi
+        i=$((i + 1))
+    done
+    printf '%-8s %6d ms mean %6d ms best\n' "$name" $((total / runs)) "$best"
+}
+
+time_runs cold "$home/target/jal.jar" -Xshare:off
+time_runs jdk-cds "$home/target/jal.jar" -Xshare:auto
+if [ -f "$cds/jal.jsa" ]; then
+    time_runs app-cds "$cds/jal.jar" -XX:SharedArchiveFile="$cds/jal.jsa" -Xshare:on
+else
+    echo "app-cds  skipped: run ../jal/bin/train-cds (or mvn -P cds package in ../jal) first"
+fi
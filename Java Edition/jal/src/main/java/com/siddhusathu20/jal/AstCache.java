@@ -0,0 +1,595 @@
+package com.siddhusathu20.jal;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Resolved syntax trees saved next to the script (Foo.jal -> Foo.jalc), so unchanged scripts skip
+// lexing, parsing and resolving. The file holds a magic number, the format version and the SHA-256
+// of the source, followed by the statements in prefix order. Counts, slots and small integers are
+// varints, token and statement lines are stored as the change from the previous line, and every
+// string is written once and referred to by index afterwards.
+class AstCache {
+    static final int MAGIC = 0x4A414C43; // "JALC"
+    // Bump whenever the tree, the resolver's annotations or TokenType change
+    static final int VERSION = 2;
+    static final int HASH_SIZE = 32;
+
+    static Path path(String source) {
+        return Paths.get(source.endsWith(".jal") ? source + "c" : source + ".jalc");
+    }
+
+    static byte[] hash(ByteBuffer source) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(source.duplicate());
+            return digest.digest();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // Returns null when there is no cache, or it is stale, from another version or unreadable
+    static List<Statement> load(String source, ByteBuffer bytes) {
+        Path path = path(source);
+        if (!Files.isRegularFile(path)) return null;
+        try (FileChannel channel = FileChannel.open(path)) {
+            MappedByteBuffer cache = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (cache.getInt() != MAGIC || cache.getInt() != VERSION) return null;
+            byte[] hash = new byte[HASH_SIZE];
+            cache.get(hash);
+            if (!Arrays.equals(hash, hash(bytes))) return null;
+            return new Reader(cache).statements();
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    // Best effort: a script in a read-only directory simply runs uncached
+    static void store(String source, ByteBuffer bytes, List<Statement> statements) {
+        Path path = path(source);
+        Path temp = null;
+        try {
+            Writer writer = new Writer();
+            writer.statements(statements);
+            ByteBuffer header = ByteBuffer.allocate(8 + HASH_SIZE).putInt(MAGIC).putInt(VERSION).put(hash(bytes));
+            ByteBuffer[] buffers = {header.flip(), ByteBuffer.wrap(writer.out, 0, writer.size)};
+            // Written aside and moved into place, so a concurrent run never maps a half-written cache
+            temp = path.resolveSibling(path.getFileName() + "." + ProcessHandle.current().pid() + "."
+                + Thread.currentThread().threadId() + ".tmp");
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                while (buffers[1].hasRemaining()) channel.write(buffers);
+            }
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            try {
+                if (temp != null) Files.deleteIfExists(temp);
+            } catch (IOException ignored) {}
+        }
+    }
+
+    // Node tags; 0 stands for a missing node
+    static final int EXPR_STMT = 1, LET = 2, BLOCK = 3, IF = 4, WHILE = 5, BREAK = 6, CONTINUE = 7,
+                     FUNC_DEF = 8, RETURN = 9, TIMES = 10, CLASS = 11;
+    static final int BINARY = 1, UNARY = 2, GROUP = 3, LITERAL = 4, ARRAY = 5, VARIABLE = 6, SELF = 7,
+                     SUPER = 8, GETTER = 9, SETTER = 10, INDEX = 11, SET_INDEX = 12, ASSIGNMENT = 13,
+                     LOGICAL = 14, FUNC_CALL = 15;
+    static final int NONE = 0, FALSE = 1, TRUE = 2, NUMBER = 3, STRING = 4, INTEGER = 5;
+
+    static class Writer implements Expression.Visitor<Void>, Statement.Visitor<Void> {
+        byte[] out = new byte[1 << 12];
+        int size = 0;
+        final Map<String, Integer> strings = new HashMap<>();
+        int line = 0;
+
+        void statements(List<? extends Statement> statements) {
+            varint(statements.size());
+            for (Statement stmt : statements) statement(stmt);
+        }
+
+        void statement(Statement stmt) {
+            if (stmt == null) {
+                write(0);
+            } else {
+                stmt.accept(this);
+                line(stmt.line);
+            }
+        }
+
+        void expression(Expression expr) {
+            if (expr == null) write(0);
+            else expr.accept(this);
+        }
+
+        void expressions(List<Expression> exprs) {
+            varint(exprs.size());
+            for (Expression expr : exprs) expression(expr);
+        }
+
+        void token(Token token) {
+            write(token.type.ordinal());
+            string(token.lexeme());
+            line(token.line);
+        }
+
+        void line(int next) {
+            int delta = next - line;
+            varint((delta << 1) ^ (delta >> 31));
+            line = next;
+        }
+
+        void tokens(List<Token> tokens) {
+            varint(tokens.size());
+            for (Token token : tokens) token(token);
+        }
+
+        // A string's first use carries its text; later uses only its index
+        void string(String str) {
+            Integer index = strings.get(str);
+            if (index != null) {
+                varint(index);
+                return;
+            }
+            varint(strings.size());
+            strings.put(str, strings.size());
+            byte[] utf8 = str.getBytes(StandardCharsets.UTF_8);
+            varint(utf8.length);
+            write(utf8);
+        }
+
+        void reference(Expression.Reference expr) {
+            varint(expr.depth + 1);
+            varint(expr.slot);
+        }
+
+        void varint(int value) {
+            while ((value & ~0x7F) != 0) {
+                write((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            write(value);
+        }
+
+        void number(double value) {
+            long bits = Double.doubleToRawLongBits(value);
+            for (int shift = 56; shift >= 0; shift -= 8)
+                write((int) (bits >>> shift));
+        }
+
+        void write(int b) {
+            if (size == out.length) out = Arrays.copyOf(out, size * 2);
+            out[size++] = (byte) b;
+        }
+
+        void write(byte[] bytes) {
+            if (size + bytes.length > out.length)
+                out = Arrays.copyOf(out, Math.max(size * 2, size + bytes.length));
+            System.arraycopy(bytes, 0, out, size, bytes.length);
+            size += bytes.length;
+        }
+
+        public Void visit(Statement.ExprStmt stmt) {
+            write(EXPR_STMT);
+            expression(stmt.expr);
+            return null;
+        }
+
+        public Void visit(Statement.LetStmt stmt) {
+            write(LET);
+            token(stmt.name);
+            expression(stmt.value);
+            varint(stmt.slot + 1);
+            return null;
+        }
+
+        public Void visit(Statement.Block stmt) {
+            write(BLOCK);
+            statements(stmt.statements);
+            varint(stmt.slotCount);
+            return null;
+        }
+
+        public Void visit(Statement.IfStmt stmt) {
+            write(IF);
+            expression(stmt.condition);
+            statement(stmt.thenBranch);
+            statement(stmt.elseBranch);
+            return null;
+        }
+
+        public Void visit(Statement.WhileLoop stmt) {
+            write(WHILE);
+            expression(stmt.condition);
+            statement(stmt.body);
+            expression(stmt.update);
+            return null;
+        }
+
+        public Void visit(Statement.Break stmt) {
+            write(BREAK);
+            token(stmt.keyword);
+            return null;
+        }
+
+        public Void visit(Statement.Continue stmt) {
+            write(CONTINUE);
+            token(stmt.keyword);
+            return null;
+        }
+
+        public Void visit(Statement.FuncDef stmt) {
+            write(FUNC_DEF);
+            funcDef(stmt);
+            return null;
+        }
+
+        void funcDef(Statement.FuncDef stmt) {
+            token(stmt.name);
+            tokens(stmt.params);
+            statements(stmt.body);
+            varint(stmt.slot + 1);
+            varint(stmt.slotCount);
+            varint(stmt.firstParam);
+            write(stmt.escapes ? 1 : 0);
+        }
+
+        public Void visit(Statement.Return stmt) {
+            write(RETURN);
+            token(stmt.keyword);
+            expression(stmt.value);
+            return null;
+        }
+
+        public Void visit(Statement.TimesLoop stmt) {
+            write(TIMES);
+            expression(stmt.count);
+            statement(stmt.body);
+            return null;
+        }
+
+        public Void visit(Statement.Class stmt) {
+            write(CLASS);
+            token(stmt.name);
+            varint(stmt.methods.size());
+            for (Statement.FuncDef method : stmt.methods) funcDef(method);
+            expression(stmt.superclass);
+            varint(stmt.slot + 1);
+            return null;
+        }
+
+        public Void visit(Expression.Binary expr) {
+            write(BINARY);
+            expression(expr.left);
+            token(expr.operator);
+            expression(expr.right);
+            return null;
+        }
+
+        public Void visit(Expression.Unary expr) {
+            write(UNARY);
+            token(expr.operator);
+            expression(expr.right);
+            return null;
+        }
+
+        public Void visit(Expression.Group expr) {
+            write(GROUP);
+            expression(expr.expr);
+            return null;
+        }
+
+        public Void visit(Expression.Literal expr) {
+            write(LITERAL);
+            Object value = expr.value;
+            if (value == null) {
+                write(NONE);
+            } else if (value instanceof Boolean) {
+                write((Boolean) value ? TRUE : FALSE);
+            } else if (value instanceof Double) {
+                double number = (Double) value;
+                if (number >= 0 && number <= Integer.MAX_VALUE && number == (int) number
+                && Double.doubleToRawLongBits(number) != Double.doubleToRawLongBits(-0.0)) {
+                    write(INTEGER);
+                    varint((int) number);
+                } else {
+                    write(NUMBER);
+                    number(number);
+                }
+            } else {
+                write(STRING);
+                string((String) value);
+            }
+            return null;
+        }
+
+        public Void visit(Expression.Array expr) {
+            write(ARRAY);
+            token(expr.bracket);
+            expressions(expr.elements);
+            return null;
+        }
+
+        public Void visit(Expression.Variable expr) {
+            write(VARIABLE);
+            token(expr.name);
+            reference(expr);
+            return null;
+        }
+
+        public Void visit(Expression.Self expr) {
+            write(SELF);
+            token(expr.keyword);
+            reference(expr);
+            return null;
+        }
+
+        public Void visit(Expression.Super expr) {
+            write(SUPER);
+            token(expr.keyword);
+            token(expr.method);
+            reference(expr);
+            return null;
+        }
+
+        public Void visit(Expression.Getter expr) {
+            write(GETTER);
+            expression(expr.object);
+            token(expr.name);
+            return null;
+        }
+
+        public Void visit(Expression.Setter expr) {
+            write(SETTER);
+            expression(expr.object);
+            token(expr.name);
+            expression(expr.value);
+            return null;
+        }
+
+        public Void visit(Expression.Index expr) {
+            write(INDEX);
+            expression(expr.object);
+            token(expr.bracket);
+            expression(expr.index);
+            return null;
+        }
+
+        public Void visit(Expression.SetIndex expr) {
+            write(SET_INDEX);
+            expression(expr.object);
+            token(expr.bracket);
+            expression(expr.index);
+            expression(expr.value);
+            return null;
+        }
+
+        public Void visit(Expression.Assignment expr) {
+            write(ASSIGNMENT);
+            token(expr.name);
+            expression(expr.value);
+            reference(expr);
+            return null;
+        }
+
+        public Void visit(Expression.Logical expr) {
+            write(LOGICAL);
+            expression(expr.left);
+            token(expr.operator);
+            expression(expr.right);
+            return null;
+        }
+
+        public Void visit(Expression.FuncCall expr) {
+            write(FUNC_CALL);
+            expression(expr.func);
+            token(expr.bracket);
+            expressions(expr.args);
+            return null;
+        }
+    }
+
+    static class Reader {
+        static final TokenType[] TYPES = TokenType.values();
+
+        final ByteBuffer in;
+        final List<String> strings = new ArrayList<>();
+        int line = 0;
+
+        Reader(ByteBuffer in) {
+            this.in = in;
+        }
+
+        List<Statement> statements() {
+            int size = varint();
+            List<Statement> statements = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) statements.add(statement());
+            return statements;
+        }
+
+        Statement statement() {
+            Statement stmt = node();
+            if (stmt != null) stmt.line = line();
+            return stmt;
+        }
+
+        Statement node() {
+            int tag = in.get();
+            switch (tag) {
+                case 0:
+                    return null;
+                case EXPR_STMT:
+                    return new Statement.ExprStmt(expression());
+                case LET: {
+                    Statement.LetStmt stmt = new Statement.LetStmt(token(), expression());
+                    stmt.slot = varint() - 1;
+                    return stmt;
+                }
+                case BLOCK: {
+                    Statement.Block stmt = new Statement.Block(statements());
+                    stmt.slotCount = varint();
+                    return stmt;
+                }
+                case IF:
+                    return new Statement.IfStmt(expression(), statement(), statement());
+                case WHILE:
+                    return new Statement.WhileLoop(expression(), statement(), expression());
+                case BREAK:
+                    return new Statement.Break(token());
+                case CONTINUE:
+                    return new Statement.Continue(token());
+                case FUNC_DEF:
+                    return funcDef();
+                case RETURN:
+                    return new Statement.Return(token(), expression());
+                case TIMES:
+                    return new Statement.TimesLoop(expression(), statement());
+                case CLASS: {
+                    Token name = token();
+                    int size = varint();
+                    List<Statement.FuncDef> methods = new ArrayList<>(size);
+                    for (int i = 0; i < size; i++) methods.add(funcDef());
+                    Statement.Class stmt = new Statement.Class(name, methods, (Expression.Variable) expression());
+                    stmt.slot = varint() - 1;
+                    return stmt;
+                }
+                default:
+                    throw new IllegalStateException("Unknown statement tag " + tag);
+            }
+        }
+
+        Statement.FuncDef funcDef() {
+            Statement.FuncDef stmt = new Statement.FuncDef(token(), tokens(), statements());
+            stmt.slot = varint() - 1;
+            stmt.slotCount = varint();
+            stmt.firstParam = varint();
+            stmt.escapes = in.get() != 0;
+            return stmt;
+        }
+
+        Expression expression() {
+            int tag = in.get();
+            switch (tag) {
+                case 0:
+                    return null;
+                case BINARY:
+                    return new Expression.Binary(expression(), token(), expression());
+                case UNARY:
+                    return new Expression.Unary(token(), expression());
+                case GROUP:
+                    return new Expression.Group(expression());
+                case LITERAL:
+                    return new Expression.Literal(literal());
+                case ARRAY:
+                    return new Expression.Array(token(), expressions());
+                case VARIABLE:
+                    return reference(new Expression.Variable(token()));
+                case SELF:
+                    return reference(new Expression.Self(token()));
+                case SUPER:
+                    return reference(new Expression.Super(token(), token()));
+                case GETTER:
+                    return new Expression.Getter(expression(), token());
+                case SETTER:
+                    return new Expression.Setter(expression(), token(), expression());
+                case INDEX:
+                    return new Expression.Index(expression(), token(), expression());
+                case SET_INDEX:
+                    return new Expression.SetIndex(expression(), token(), expression(), expression());
+                case ASSIGNMENT:
+                    return reference(new Expression.Assignment(token(), expression()));
+                case LOGICAL:
+                    return new Expression.Logical(expression(), token(), expression());
+                case FUNC_CALL:
+                    return new Expression.FuncCall(expression(), token(), expressions());
+                default:
+                    throw new IllegalStateException("Unknown expression tag " + tag);
+            }
+        }
+
+        List<Expression> expressions() {
+            int size = varint();
+            List<Expression> exprs = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) exprs.add(expression());
+            return exprs;
+        }
+
+        Expression reference(Expression.Reference expr) {
+            expr.depth = varint() - 1;
+            expr.slot = varint();
+            return expr;
+        }
+
+        Object literal() {
+            int kind = in.get();
+            switch (kind) {
+                case NONE:
+                    return null;
+                case FALSE:
+                    return false;
+                case TRUE:
+                    return true;
+                case NUMBER:
+                    return in.getDouble();
+                case INTEGER:
+                    return (double) varint();
+                case STRING:
+                    return string();
+                default:
+                    throw new IllegalStateException("Unknown literal kind " + kind);
+            }
+        }
+
+        Token token() {
+            TokenType type = TYPES[in.get()];
+            String lexeme = string();
+            return new Token(type, lexeme, null, line());
+        }
+
+        int line() {
+            int delta = varint();
+            line += (delta >>> 1) ^ -(delta & 1);
+            return line;
+        }
+
+        List<Token> tokens() {
+            int size = varint();
+            List<Token> tokens = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) tokens.add(token());
+            return tokens;
+        }
+
+        String string() {
+            int index = varint();
+            if (index < strings.size()) return strings.get(index);
+            byte[] utf8 = new byte[varint()];
+            in.get(utf8);
+            String str = new String(utf8, StandardCharsets.UTF_8);
+            strings.add(str);
+            return str;
+        }
+
+        int varint() {
+            int value = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = in.get();
+                value |= (b & 0x7F) << shift;
+                if (b >= 0) return value;
+            }
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.siddhusathu20.jal;
+
+// Executable operation behind an Expression.Binary. '+' nodes start uninitialized and rewrite
+// themselves to a specialization for the operand types they see, falling back to the generic
+// node once a guard fails; the other operators get a fixed node when the expression is parsed.
+abstract class BinaryNode {
+    abstract Object execute(Evaluator evaluator, Expression.Binary expr);
+
+    static BinaryNode forOperator(TokenType type, boolean numeric) {
+        switch (type) {
+            case ASTERISK:
+            case SLASH:
+            case PERCENT:
+            case MINUS:
+                return ARITHMETIC;
+            case PLUS:
+                return numeric ? ARITHMETIC : UNINITIALIZED_ADD;
+            case GT:
+            case LT:
+            case GT_EQ:
+            case LT_EQ:
+                return COMPARISON;
+            case DOUBLE_EQ:
+                return EQUALS;
+            default:
+                return UNSUPPORTED;
+        }
+    }
+
+    static final BinaryNode ARITHMETIC = new BinaryNode() {
+        @Override
+        Object execute(Evaluator evaluator, Expression.Binary expr) {
+            return Evaluator.box(evaluator.arithmetic(expr));
+        }
+    };
+
+    static final BinaryNode COMPARISON = new BinaryNode() {
+        @Override
+        Object execute(Evaluator evaluator, Expression.Binary expr) {
+            return evaluator.compare(expr);
+        }
+    };
+
+    static final BinaryNode EQUALS = new BinaryNode() {
+        @Override
+        Object execute(Evaluator evaluator, Expression.Binary expr) {
+            Object left = evaluator.eval(expr.left);
+            Object right = evaluator.eval(expr.right);
+            return evaluator.areEqual(left, right);
+        }
+    };
+
+    static final BinaryNode UNSUPPORTED = new BinaryNode() {
+        @Override
+        Object execute(Evaluator evaluator, Expression.Binary expr) {
+            evaluator.eval(expr.left);
+            evaluator.eval(expr.right);
+            return null;
+        }
+    };
+
+    static final BinaryNode UNINITIALIZED_ADD = new BinaryNode() {
+        @Override
+        Object execute(Evaluator evaluator, Expression.Binary expr) {
+            Object left = evaluator.eval(expr.left);
+            Object right = evaluator.eval(expr.right);
+            AddNode node;
+            if (left instanceof Double && right instanceof Double)
+                node = NUMBER_ADD;
+            else if (left instanceof CharSequence && right instanceof CharSequence)
+                node = STRING_CONCAT;
+            else if (left instanceof JALArray && right instanceof JALArray)
+                node = ARRAY_CONCAT;
+            else
+                node = GENERIC_ADD;
+            expr.node = node;
+            return node.add(evaluator, expr, left, right);
+        }
+    };
+
+    abstract static class AddNode extends BinaryNode {
+        @Override
+        Object execute(Evaluator evaluator, Expression.Binary expr) {
+            Object left = evaluator.eval(expr.left);
+            Object right = evaluator.eval(expr.right);
+            return add(evaluator, expr, left, right);
+        }
+
+        abstract Object add(Evaluator evaluator, Expression.Binary expr, Object left, Object right);
+
+        Object fallBack(Evaluator evaluator, Expression.Binary expr, Object left, Object right) {
+            expr.node = GENERIC_ADD;
+            return GENERIC_ADD.add(evaluator, expr, left, right);
+        }
+    }
+
+    static final AddNode NUMBER_ADD = new AddNode() {
+        @Override
+        Object add(Evaluator evaluator, Expression.Binary expr, Object left, Object right) {
+            if (left instanceof Double && right instanceof Double)
+                return Evaluator.box((double) left + (double) right);
+            return fallBack(evaluator, expr, left, right);
+        }
+    };
+
+    static final AddNode STRING_CONCAT = new AddNode() {
+        @Override
+        Object add(Evaluator evaluator, Expression.Binary expr, Object left, Object right) {
+            if (left instanceof CharSequence && right instanceof CharSequence) {
+                if (evaluator.stats != null) evaluator.stats.strings++;
+                return Rope.concat((CharSequence) left, (CharSequence) right);
+            }
+            return fallBack(evaluator, expr, left, right);
+        }
+    };
+
+    static final AddNode ARRAY_CONCAT = new AddNode() {
+        @Override
+        Object add(Evaluator evaluator, Expression.Binary expr, Object left, Object right) {
+            if (left instanceof JALArray && right instanceof JALArray) {
+                if (evaluator.stats != null) evaluator.stats.arrays++;
+                return ((JALArray) left).concat((JALArray) right);
+            }
+            return fallBack(evaluator, expr, left, right);
+        }
+    };
+
+    static final AddNode GENERIC_ADD = new AddNode() {
+        @Override
+        Object add(Evaluator evaluator, Expression.Binary expr, Object left, Object right) {
+            if (left instanceof Double && right instanceof Double)
+                return Evaluator.box((double) left + (double) right);
+            if (left instanceof CharSequence && right instanceof CharSequence) {
+                if (evaluator.stats != null) evaluator.stats.strings++;
+                return Rope.concat((CharSequence) left, (CharSequence) right);
+            }
+            if (left instanceof JALArray && right instanceof JALArray) {
+                if (evaluator.stats != null) evaluator.stats.arrays++;
+                return ((JALArray) left).concat((JALArray) right);
+            }
+            throw new Evaluator.RuntimeError(expr.operator, "Invalid operand type(s) - Operands must be numbers, strings or arrays.");
+        }
+    };
+}
@@ -0,0 +1,27 @@
+package com.siddhusathu20.jal;
+
+// A method read off an instance as a value, e.g. `let f = obj.method`
+public class BoundMethod implements Callable {
+    final Function method;
+    final JALInstance self;
+
+    BoundMethod(Function method, JALInstance self) {
+        this.method = method;
+        this.self = self;
+    }
+
+    @Override
+    public int getArgc() {
+        return method.getArgc();
+    }
+
+    @Override
+    public Object call(Evaluator evaluator, Object[] args) {
+        return method.callMethod(evaluator, self, args);
+    }
+
+    @Override
+    public String toString() {
+        return method.toString();
+    }
+}
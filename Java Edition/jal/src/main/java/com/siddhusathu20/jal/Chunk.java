@@ -0,0 +1,54 @@
+package com.siddhusathu20.jal;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class Chunk {
+    byte[] code = new byte[64];
+    int count = 0;
+    final List<Object> constants = new ArrayList<>();
+    final Map<Object, Integer> constantIndex = new HashMap<>();
+    // Run-length line table: lineStarts[i] is the first offset that belongs to lines[i]
+    int[] lineStarts = new int[8];
+    int[] lines = new int[8];
+    int lineCount = 0;
+
+    void write(int b, int line) {
+        if (count == code.length)
+            code = Arrays.copyOf(code, count * 2);
+        code[count] = (byte) b;
+        if (lineCount == 0 || lines[lineCount - 1] != line) {
+            if (lineCount == lines.length) {
+                lineStarts = Arrays.copyOf(lineStarts, lineCount * 2);
+                lines = Arrays.copyOf(lines, lineCount * 2);
+            }
+            lineStarts[lineCount] = count;
+            lines[lineCount] = line;
+            lineCount++;
+        }
+        count++;
+    }
+
+    int addConstant(Object value) {
+        Integer index = constantIndex.get(value);
+        if (index != null) return index;
+        constants.add(value);
+        index = constants.size() - 1;
+        constantIndex.put(value, index);
+        return index;
+    }
+
+    int getLine(int offset) {
+        int low = 0;
+        int high = lineCount - 1;
+        while (low < high) {
+            int mid = (low + high + 1) / 2;
+            if (lineStarts[mid] <= offset) low = mid;
+            else high = mid - 1;
+        }
+        return lines[low];
+    }
+}
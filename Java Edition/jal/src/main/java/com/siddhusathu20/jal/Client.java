@@ -0,0 +1,95 @@
+package com.siddhusathu20.jal;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Paths;
+
+// Thin client for a daemon started with --daemon=SOCKET:
+//     java com.siddhusathu20.jal.Client SOCKET [options] script.jal
+// It forwards its working directory, output and input charsets, the remaining arguments and
+// standard input, copies the run's output back as it arrives and exits with the run's status. None
+// of the interpreter is loaded here.
+public class Client {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("Incorrect usage!");
+            System.exit(64);
+        }
+        SocketChannel channel = null;
+        try {
+            channel = SocketChannel.open(UnixDomainSocketAddress.of(args[0]));
+        } catch (IOException e) {
+            System.err.println("Could not connect to " + args[0] + ": " + e.getMessage());
+            System.exit(69);
+        }
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(header);
+        out.writeUTF(Paths.get("").toAbsolutePath().toString());
+        out.writeUTF(System.out.charset().name());
+        // Standard input is decoded as a command-line run would decode it here
+        out.writeUTF(Charset.defaultCharset().name());
+        out.writeInt(args.length - 1);
+        for (int i = 1; i < args.length; i++) out.writeUTF(args[i]);
+        write(channel, header.toByteArray(), header.size());
+
+        SocketChannel connection = channel;
+        Thread stdin = new Thread(() -> forward(connection), "jal-stdin");
+        stdin.setDaemon(true);
+        stdin.start();
+
+        DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+        byte[] buffer = new byte[1 << 16];
+        while (true) {
+            int kind, value;
+            try {
+                kind = in.readByte();
+                value = in.readInt();
+            } catch (EOFException e) {
+                System.err.println("Lost the connection to the daemon");
+                System.exit(69);
+                return;
+            }
+            if (kind == Daemon.EXIT) {
+                System.out.flush();
+                System.exit(value);
+            }
+            PrintStream target = kind == Daemon.STDOUT ? System.out : System.err;
+            while (value > 0) {
+                int read = in.read(buffer, 0, Math.min(value, buffer.length));
+                if (read < 0) throw new EOFException();
+                target.write(buffer, 0, read);
+                value -= read;
+            }
+            target.flush();
+        }
+    }
+
+    // Copies standard input to the daemon, then tells it no more is coming
+    static void forward(SocketChannel channel) {
+        byte[] buffer = new byte[1 << 13];
+        try {
+            int read;
+            while ((read = System.in.read(buffer)) > 0)
+                write(channel, buffer, read);
+            channel.shutdownOutput();
+        } catch (IOException e) {
+            // The run is over and the daemon has closed the connection
+        }
+    }
+
+    static void write(SocketChannel channel, byte[] bytes, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes, 0, length);
+        while (buffer.hasRemaining()) channel.write(buffer);
+    }
+}
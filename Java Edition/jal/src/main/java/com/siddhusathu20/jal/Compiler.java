@@ -0,0 +1,643 @@
+package com.siddhusathu20.jal;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class Compiler implements Expression.Visitor<Void>, Statement.Visitor<Void> {
+    FunctionState current = null;
+    int line = 1;
+
+    static class Local {
+        final String name;
+        final int depth;
+        boolean captured = false;
+
+        Local(String name, int depth) {
+            this.name = name;
+            this.depth = depth;
+        }
+    }
+
+    static class UpvalueRef {
+        final int index;
+        final boolean isLocal;
+
+        UpvalueRef(int index, boolean isLocal) {
+            this.index = index;
+            this.isLocal = isLocal;
+        }
+    }
+
+    static class Loop {
+        final Loop enclosing;
+        final int scopeDepth;
+        final List<Integer> breakJumps = new ArrayList<>();
+        final List<Integer> continueJumps = new ArrayList<>();
+
+        Loop(Loop enclosing, int scopeDepth) {
+            this.enclosing = enclosing;
+            this.scopeDepth = scopeDepth;
+        }
+    }
+
+    static class FunctionState {
+        final FunctionState enclosing;
+        final Prototype proto;
+        final Resolver.FuncType type;
+        final List<Local> locals = new ArrayList<>();
+        final List<UpvalueRef> upvalues = new ArrayList<>();
+        int scopeDepth = 0;
+        Loop loop = null;
+
+        FunctionState(FunctionState enclosing, Prototype proto, Resolver.FuncType type) {
+            this.enclosing = enclosing;
+            this.proto = proto;
+            this.type = type;
+            // Slot 0 holds the callee, or the receiver for methods
+            boolean isMethod = type == Resolver.FuncType.METHOD || type == Resolver.FuncType.CONSTRUCTOR;
+            locals.add(new Local(isMethod ? "self" : "", 0));
+        }
+    }
+
+    Prototype compile(List<Statement> statements) {
+        current = new FunctionState(null, new Prototype("main", 0), Resolver.FuncType.MAIN);
+        for (Statement stmt : statements) {
+            compile(stmt);
+        }
+        emitReturn();
+        return current.proto;
+    }
+
+    public Void visit(Statement.ExprStmt stmt) {
+        compile(stmt.expr);
+        emit(OpCode.POP);
+        return null;
+    }
+
+    public Void visit(Statement.LetStmt stmt) {
+        line = stmt.name.line;
+        if (stmt.value != null)
+            compile(stmt.value);
+        else
+            emit(OpCode.NONE);
+        defineVariable(stmt.name);
+        return null;
+    }
+
+    public Void visit(Statement.Block stmt) {
+        beginScope();
+        for (Statement statement : stmt.statements) {
+            compile(statement);
+        }
+        endScope();
+        return null;
+    }
+
+    public Void visit(Statement.IfStmt stmt) {
+        compile(stmt.condition);
+        int thenJump = emitJump(OpCode.JUMP_IF_FALSE);
+        emit(OpCode.POP);
+        compile(stmt.thenBranch);
+        int elseJump = emitJump(OpCode.JUMP);
+        patchJump(thenJump);
+        emit(OpCode.POP);
+        compile(stmt.elseBranch);
+        patchJump(elseJump);
+        return null;
+    }
+
+    public Void visit(Statement.WhileLoop stmt) {
+        int loopStart = current.proto.chunk.count;
+        current.loop = new Loop(current.loop, current.scopeDepth);
+        // A loop without a condition only ends through break or return
+        int exitJump = -1;
+        if (stmt.condition != null) {
+            compile(stmt.condition);
+            exitJump = emitJump(OpCode.JUMP_IF_FALSE);
+            emit(OpCode.POP);
+        }
+        compile(stmt.body);
+        patchContinues();
+        if (stmt.update != null) {
+            compile(stmt.update);
+            emit(OpCode.POP);
+        }
+        emitLoop(loopStart);
+        if (exitJump >= 0) {
+            patchJump(exitJump);
+            emit(OpCode.POP);
+        }
+        endLoop();
+        return null;
+    }
+
+    public Void visit(Statement.TimesLoop stmt) {
+        beginScope();
+        emitConstant(0.0);
+        addLocal("");
+        int counter = current.locals.size() - 1;
+        int loopStart = current.proto.chunk.count;
+        current.loop = new Loop(current.loop, current.scopeDepth);
+        emit(OpCode.GET_LOCAL, counter);
+        compile(stmt.count);
+        emit(OpCode.LESS);
+        int exitJump = emitJump(OpCode.JUMP_IF_FALSE);
+        emit(OpCode.POP);
+        compile(stmt.body);
+        patchContinues();
+        emit(OpCode.GET_LOCAL, counter);
+        emitConstant(1.0);
+        emit(OpCode.ADD);
+        emit(OpCode.SET_LOCAL, counter);
+        emit(OpCode.POP);
+        emitLoop(loopStart);
+        patchJump(exitJump);
+        emit(OpCode.POP);
+        endLoop();
+        endScope();
+        return null;
+    }
+
+    public Void visit(Statement.Break stmt) {
+        line = stmt.keyword.line;
+        discardLocals(current.loop.scopeDepth);
+        current.loop.breakJumps.add(emitJump(OpCode.JUMP));
+        return null;
+    }
+
+    public Void visit(Statement.Continue stmt) {
+        line = stmt.keyword.line;
+        discardLocals(current.loop.scopeDepth);
+        current.loop.continueJumps.add(emitJump(OpCode.JUMP));
+        return null;
+    }
+
+    public Void visit(Statement.FuncDef stmt) {
+        line = stmt.name.line;
+        if (current.scopeDepth > 0 && findLocalInScope(stmt.name.lexeme()) < 0) {
+            // Declared before the body is compiled so the function can refer to itself
+            addLocal(stmt.name.lexeme());
+            function(stmt, Resolver.FuncType.FUNCTION);
+            return null;
+        }
+        function(stmt, Resolver.FuncType.FUNCTION);
+        defineVariable(stmt.name);
+        return null;
+    }
+
+    public Void visit(Statement.Return stmt) {
+        line = stmt.keyword.line;
+        if (stmt.value == null || current.type == Resolver.FuncType.CONSTRUCTOR) {
+            emitReturn();
+            return null;
+        }
+        compile(stmt.value);
+        emit(OpCode.RETURN);
+        return null;
+    }
+
+    public Void visit(Statement.Class stmt) {
+        line = stmt.name.line;
+        int name = constant(stmt.name.lexeme());
+        emit(OpCode.CLASS, name >> 8, name & 0xff);
+        defineVariable(stmt.name);
+        if (stmt.superclass != null) {
+            compile(stmt.superclass);
+            beginScope();
+            addLocal("super");
+            loadVariable(stmt.name);
+            line = stmt.superclass.name.line;
+            emit(OpCode.INHERIT);
+        }
+        loadVariable(stmt.name);
+        for (Statement.FuncDef method : stmt.methods) {
+            boolean isConstructor = method.name.lexeme().equals("constructor");
+            function(method, isConstructor ? Resolver.FuncType.CONSTRUCTOR : Resolver.FuncType.METHOD);
+            int methodName = constant(method.name.lexeme());
+            emit(OpCode.METHOD, methodName >> 8, methodName & 0xff);
+        }
+        emit(OpCode.POP);
+        if (stmt.superclass != null) endScope();
+        return null;
+    }
+
+    public Void visit(Expression.Literal expr) {
+        if (expr.value == null) emit(OpCode.NONE);
+        else if (expr.value.equals(true)) emit(OpCode.TRUE);
+        else if (expr.value.equals(false)) emit(OpCode.FALSE);
+        else emitConstant(expr.value);
+        return null;
+    }
+
+    public Void visit(Expression.Array expr) {
+        for (Expression element : expr.elements) {
+            compile(element);
+        }
+        line = expr.bracket.line;
+        emit(OpCode.ARRAY, expr.elements.size() >> 8, expr.elements.size() & 0xff);
+        return null;
+    }
+
+    public Void visit(Expression.Group expr) {
+        compile(expr.expr);
+        return null;
+    }
+
+    public Void visit(Expression.Variable expr) {
+        loadVariable(expr.name);
+        return null;
+    }
+
+    public Void visit(Expression.Assignment expr) {
+        compile(expr.value);
+        line = expr.name.line;
+        int slot = resolveLocal(current, expr.name.lexeme());
+        if (slot >= 0) {
+            emit(OpCode.SET_LOCAL, slot);
+            return null;
+        }
+        slot = resolveUpvalue(current, expr.name.lexeme());
+        if (slot >= 0) {
+            emit(OpCode.SET_UPVALUE, slot);
+            return null;
+        }
+        int name = constant(expr.name.lexeme());
+        emit(OpCode.SET_GLOBAL, name >> 8, name & 0xff);
+        return null;
+    }
+
+    public Void visit(Expression.Self expr) {
+        loadVariable(expr.keyword);
+        return null;
+    }
+
+    public Void visit(Expression.Super expr) {
+        line = expr.keyword.line;
+        loadVariable("self");
+        loadVariable("super");
+        line = expr.method.line;
+        int name = constant(expr.method.lexeme());
+        emit(OpCode.GET_SUPER, name >> 8, name & 0xff);
+        return null;
+    }
+
+    public Void visit(Expression.Getter expr) {
+        compile(expr.object);
+        line = expr.name.line;
+        int name = constant(expr.name.lexeme());
+        emit(OpCode.GET_PROPERTY, name >> 8, name & 0xff);
+        return null;
+    }
+
+    public Void visit(Expression.Setter expr) {
+        compile(expr.object);
+        compile(expr.value);
+        line = expr.name.line;
+        int name = constant(expr.name.lexeme());
+        emit(OpCode.SET_PROPERTY, name >> 8, name & 0xff);
+        return null;
+    }
+
+    public Void visit(Expression.Index expr) {
+        compile(expr.object);
+        compile(expr.index);
+        line = expr.bracket.line;
+        emit(OpCode.INDEX);
+        return null;
+    }
+
+    public Void visit(Expression.SetIndex expr) {
+        // Same order as the evaluator: the value is evaluated before the index
+        compile(expr.object);
+        compile(expr.value);
+        compile(expr.index);
+        line = expr.bracket.line;
+        emit(OpCode.SET_INDEX);
+        return null;
+    }
+
+    public Void visit(Expression.Logical expr) {
+        compile(expr.left);
+        if (expr.operator.type == TokenType.OR) {
+            int elseJump = emitJump(OpCode.JUMP_IF_FALSE);
+            int endJump = emitJump(OpCode.JUMP);
+            patchJump(elseJump);
+            emit(OpCode.POP);
+            compile(expr.right);
+            patchJump(endJump);
+        } else {
+            int endJump = emitJump(OpCode.JUMP_IF_FALSE);
+            emit(OpCode.POP);
+            compile(expr.right);
+            patchJump(endJump);
+        }
+        return null;
+    }
+
+    public Void visit(Expression.Unary expr) {
+        compile(expr.right);
+        line = expr.operator.line;
+        switch (expr.operator.type) {
+            case EXCL:
+                emit(OpCode.NOT);
+                break;
+            case MINUS:
+                emit(OpCode.NEGATE);
+                break;
+            case NUMOF:
+                emit(OpCode.NUMOF);
+                break;
+            case STROF:
+                emit(OpCode.STROF);
+                break;
+            default:
+                emit(OpCode.POP);
+                emit(OpCode.NONE);
+                break;
+        }
+        return null;
+    }
+
+    public Void visit(Expression.Binary expr) {
+        compile(expr.left);
+        compile(expr.right);
+        line = expr.operator.line;
+        switch (expr.operator.type) {
+            case ASTERISK:
+                emit(OpCode.MULTIPLY);
+                break;
+            case SLASH:
+                emit(OpCode.DIVIDE);
+                break;
+            case PERCENT:
+                emit(OpCode.MODULO);
+                break;
+            case MINUS:
+                emit(OpCode.SUBTRACT);
+                break;
+            case PLUS:
+                emit(OpCode.ADD);
+                break;
+            case GT:
+                emit(OpCode.GREATER);
+                break;
+            case LT:
+                emit(OpCode.LESS);
+                break;
+            case GT_EQ:
+                emit(OpCode.GREATER_EQUAL);
+                break;
+            case LT_EQ:
+                emit(OpCode.LESS_EQUAL);
+                break;
+            case DOUBLE_EQ:
+                emit(OpCode.EQUAL);
+                break;
+            default:
+                // The evaluator yields none for operators it does not implement
+                emit(OpCode.POP);
+                emit(OpCode.POP);
+                emit(OpCode.NONE);
+                break;
+        }
+        return null;
+    }
+
+    public Void visit(Expression.FuncCall expr) {
+        if (expr.func instanceof Expression.Getter) {
+            Expression.Getter getter = (Expression.Getter) expr.func;
+            compile(getter.object);
+            for (Expression arg : expr.args) {
+                compile(arg);
+            }
+            line = expr.bracket.line;
+            int name = constant(getter.name.lexeme());
+            emit(OpCode.INVOKE, name >> 8, name & 0xff);
+            emit(expr.args.size());
+            return null;
+        }
+        compile(expr.func);
+        for (Expression arg : expr.args) {
+            compile(arg);
+        }
+        line = expr.bracket.line;
+        emit(OpCode.CALL, expr.args.size());
+        return null;
+    }
+
+    void function(Statement.FuncDef stmt, Resolver.FuncType type) {
+        Prototype proto = new Prototype(stmt.name.lexeme(), stmt.params.size());
+        current = new FunctionState(current, proto, type);
+        beginScope();
+        for (Token param : stmt.params) {
+            addLocal(param.lexeme());
+        }
+        for (Statement statement : stmt.body) {
+            compile(statement);
+        }
+        emitReturn();
+        FunctionState function = current;
+        current = current.enclosing;
+        line = stmt.name.line;
+        int index = constant(proto);
+        emit(OpCode.CLOSURE, index >> 8, index & 0xff);
+        for (UpvalueRef upvalue : function.upvalues) {
+            emit(upvalue.isLocal ? 1 : 0);
+            emit(upvalue.index);
+        }
+    }
+
+    // Binds the value on top of the stack to name
+    void defineVariable(Token name) {
+        if (current.scopeDepth > 0) {
+            int slot = findLocalInScope(name.lexeme());
+            if (slot >= 0) {
+                // Redeclaring a name in the same scope reuses its slot
+                emit(OpCode.SET_LOCAL, slot);
+                emit(OpCode.POP);
+            } else {
+                addLocal(name.lexeme());
+            }
+            return;
+        }
+        int index = constant(name.lexeme());
+        emit(OpCode.DEFINE_GLOBAL, index >> 8, index & 0xff);
+    }
+
+    void loadVariable(Token name) {
+        line = name.line;
+        loadVariable(name.lexeme());
+    }
+
+    void loadVariable(String name) {
+        int slot = resolveLocal(current, name);
+        if (slot >= 0) {
+            emit(OpCode.GET_LOCAL, slot);
+            return;
+        }
+        slot = resolveUpvalue(current, name);
+        if (slot >= 0) {
+            emit(OpCode.GET_UPVALUE, slot);
+            return;
+        }
+        int index = constant(name);
+        emit(OpCode.GET_GLOBAL, index >> 8, index & 0xff);
+    }
+
+    int findLocalInScope(String name) {
+        for (int i = current.locals.size() - 1; i >= 0; i--) {
+            Local local = current.locals.get(i);
+            if (local.depth < current.scopeDepth) break;
+            if (local.name.equals(name)) return i;
+        }
+        return -1;
+    }
+
+    int resolveLocal(FunctionState state, String name) {
+        for (int i = state.locals.size() - 1; i >= 0; i--) {
+            if (state.locals.get(i).name.equals(name)) return i;
+        }
+        return -1;
+    }
+
+    int resolveUpvalue(FunctionState state, String name) {
+        if (state.enclosing == null) return -1;
+        int local = resolveLocal(state.enclosing, name);
+        if (local >= 0) {
+            state.enclosing.locals.get(local).captured = true;
+            return addUpvalue(state, local, true);
+        }
+        int upvalue = resolveUpvalue(state.enclosing, name);
+        if (upvalue >= 0) return addUpvalue(state, upvalue, false);
+        return -1;
+    }
+
+    int addUpvalue(FunctionState state, int index, boolean isLocal) {
+        for (int i = 0; i < state.upvalues.size(); i++) {
+            UpvalueRef upvalue = state.upvalues.get(i);
+            if (upvalue.index == index && upvalue.isLocal == isLocal) return i;
+        }
+        if (state.upvalues.size() == 256) {
+            Main.error(line, "Too many closure variables in function");
+            return 0;
+        }
+        state.upvalues.add(new UpvalueRef(index, isLocal));
+        state.proto.upvalueCount = state.upvalues.size();
+        return state.upvalues.size() - 1;
+    }
+
+    void addLocal(String name) {
+        if (current.locals.size() == 256) {
+            Main.error(line, "Too many local variables in function");
+            return;
+        }
+        current.locals.add(new Local(name, current.scopeDepth));
+    }
+
+    void beginScope() {
+        current.scopeDepth++;
+    }
+
+    void endScope() {
+        current.scopeDepth--;
+        discardLocals(current.scopeDepth);
+        while (!current.locals.isEmpty()
+                && current.locals.get(current.locals.size() - 1).depth > current.scopeDepth) {
+            current.locals.remove(current.locals.size() - 1);
+        }
+    }
+
+    // Emits the pops for every local deeper than depth without forgetting them
+    void discardLocals(int depth) {
+        for (int i = current.locals.size() - 1; i >= 0; i--) {
+            Local local = current.locals.get(i);
+            if (local.depth <= depth) break;
+            emit(local.captured ? OpCode.CLOSE_UPVALUE : OpCode.POP);
+        }
+    }
+
+    void patchContinues() {
+        for (int jump : current.loop.continueJumps) {
+            patchJump(jump);
+        }
+    }
+
+    void endLoop() {
+        for (int jump : current.loop.breakJumps) {
+            patchJump(jump);
+        }
+        current.loop = current.loop.enclosing;
+    }
+
+    void compile(Statement stmt) {
+        if (stmt != null) stmt.accept(this);
+    }
+
+    void compile(Expression expr) {
+        expr.accept(this);
+    }
+
+    int constant(Object value) {
+        int index = current.proto.chunk.addConstant(value);
+        if (index > 0xffff) {
+            Main.error(line, "Too many constants in one chunk");
+            return 0;
+        }
+        return index;
+    }
+
+    void emit(int b) {
+        current.proto.chunk.write(b, line);
+    }
+
+    void emit(OpCode op) {
+        emit(op.ordinal());
+    }
+
+    void emit(OpCode op, int operand) {
+        emit(op.ordinal());
+        emit(operand);
+    }
+
+    void emit(OpCode op, int high, int low) {
+        emit(op.ordinal());
+        emit(high);
+        emit(low);
+    }
+
+    void emitConstant(Object value) {
+        int index = constant(value);
+        emit(OpCode.CONSTANT, index >> 8, index & 0xff);
+    }
+
+    void emitReturn() {
+        if (current.type == Resolver.FuncType.CONSTRUCTOR)
+            emit(OpCode.GET_LOCAL, 0);
+        else
+            emit(OpCode.NONE);
+        emit(OpCode.RETURN);
+    }
+
+    int emitJump(OpCode op) {
+        emit(op, 0xff, 0xff);
+        return current.proto.chunk.count - 2;
+    }
+
+    void patchJump(int offset) {
+        Chunk chunk = current.proto.chunk;
+        int jump = chunk.count - offset - 2;
+        if (jump > 0xffff)
+            Main.error(line, "Too much code to jump over");
+        chunk.code[offset] = (byte) ((jump >> 8) & 0xff);
+        chunk.code[offset + 1] = (byte) (jump & 0xff);
+    }
+
+    void emitLoop(int loopStart) {
+        emit(OpCode.LOOP);
+        int offset = current.proto.chunk.count - loopStart + 2;
+        if (offset > 0xffff)
+            Main.error(line, "Loop body too large");
+        emit((offset >> 8) & 0xff);
+        emit(offset & 0xff);
+    }
+}
@@ -0,0 +1,165 @@
+package com.siddhusathu20.jal;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.locks.LockSupport;
+
+// Long-lived interpreter serving runs over a Unix domain socket (--daemon=SOCKET), so each script
+// skips JVM startup and runs on code the JIT has already compiled. Every connection is one run on
+// its own thread, with a fresh Evaluator and so fresh globals. The client sends its working
+// directory, the charsets of its output and input and its arguments, then the script's standard
+// input until it shuts down its side. The daemon answers with frames of a kind byte and an int, the
+// int being a length followed by that much output for STDOUT and STDERR, and the exit status for
+// the final EXIT frame. A run whose client has gone is cancelled as soon as a write to it fails.
+class Daemon {
+    static final int EXIT = 0, STDOUT = 1, STDERR = 2;
+    // How often a run that prints nothing checks that its client is still there
+    static final long WATCH_NANOS = 1_000_000_000;
+
+    final Path socket;
+
+    Daemon(Path socket) {
+        this.socket = socket;
+    }
+
+    void serve() throws IOException {
+        // A socket file left behind by a daemon that was killed would make bind fail
+        Files.deleteIfExists(socket);
+        try (ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+            server.bind(UnixDomainSocketAddress.of(socket));
+            socket.toFile().deleteOnExit();
+            while (true) {
+                SocketChannel channel = server.accept();
+                new Thread(() -> handle(channel), "jal-run").start();
+            }
+        }
+    }
+
+    void handle(SocketChannel channel) {
+        try (channel) {
+            DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Channels.newInputStream(channel), Evaluator.IO_BUFFER));
+            DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Channels.newOutputStream(channel), Evaluator.IO_BUFFER));
+            Path dir = Paths.get(in.readUTF());
+            Charset charset = Charset.forName(in.readUTF());
+            Charset inCharset = Charset.forName(in.readUTF());
+            String[] args = new String[in.readInt()];
+            for (int i = 0; i < args.length; i++) args[i] = in.readUTF();
+            Run run = new Run();
+            run.in = in;
+            run.inCharset = inCharset;
+            run.out = new PrintStream(frames(out, STDOUT, run), false, charset);
+            run.err = new PrintStream(frames(out, STDERR, run), true, charset);
+            Thread watch = new Thread(() -> watch(out, run), "jal-watch");
+            watch.setDaemon(true);
+            watch.start();
+            int status;
+            String problem = run.parse(args, dir);
+            if (problem != null) {
+                run.out.println(problem);
+                status = 64;
+            } else {
+                status = execute(run);
+            }
+            run.out.flush();
+            run.err.flush();
+            watch.interrupt();
+            synchronized (out) {
+                out.writeByte(EXIT);
+                out.writeInt(status);
+                out.flush();
+            }
+        } catch (IOException e) {
+            // The client has gone, so there is nobody left to report to
+        }
+    }
+
+    // Failures that would end a command-line run must only end this one
+    static int execute(Run run) {
+        try {
+            return run.execute();
+        } catch (NoSuchFileException e) {
+            run.err.println("No such file: " + run.path);
+            return 66;
+        } catch (IOException e) {
+            run.err.println("Could not read " + run.path + ": " + e.getMessage());
+            return 74;
+        } catch (RuntimeException | StackOverflowError e) {
+            e.printStackTrace(run.err);
+            return 1;
+        }
+    }
+
+    // A closed connection only shows when writing to it, so an empty frame is sent every WATCH_NANOS
+    static void watch(DataOutputStream out, Run run) {
+        while (true) {
+            LockSupport.parkNanos(WATCH_NANOS);
+            synchronized (out) {
+                // Nothing may follow the EXIT frame
+                if (Thread.interrupted()) return;
+                try {
+                    out.writeByte(STDOUT);
+                    out.writeInt(0);
+                    out.flush();
+                } catch (IOException e) {
+                    run.cancel();
+                    return;
+                }
+            }
+        }
+    }
+
+    // Output written to the stream is sent as frames of the given kind. PrintStream hides write
+    // errors, so a failed write cancels the run here.
+    static OutputStream frames(DataOutputStream out, int kind, Run run) {
+        return new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[] {(byte) b}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                if (len == 0) return;
+                synchronized (out) {
+                    try {
+                        out.writeByte(kind);
+                        out.writeInt(len);
+                        out.write(b, off, len);
+                    } catch (IOException e) {
+                        run.cancel();
+                        throw e;
+                    }
+                }
+            }
+
+            @Override
+            public void flush() throws IOException {
+                synchronized (out) {
+                    try {
+                        out.flush();
+                    } catch (IOException e) {
+                        run.cancel();
+                        throw e;
+                    }
+                }
+            }
+        };
+    }
+}
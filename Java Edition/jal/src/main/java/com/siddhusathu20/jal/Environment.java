@@ -5,45 +5,49 @@ import java.util.Map;
 
 public class Environment {
     final Environment enclosing;
-    final Map<String, Object> vars = new HashMap<>();
+    final Map<String, Object> vars;
+    final Object[] values;
 
     Environment() {
         enclosing = null;
+        vars = new HashMap<>();
+        values = null;
     }
 
-    Environment(Environment enclosing) {
+    Environment(Environment enclosing, int size) {
         this.enclosing = enclosing;
+        this.vars = null;
+        this.values = new Object[size];
     }
 
     void define(String name, Object value) {
         vars.put(name, value);
     }
 
+    void define(int slot, Object value) {
+        values[slot] = value;
+    }
+
     void assign(Token name, Object value) {
-        if (vars.containsKey(name.lexeme)) {
-            vars.put(name.lexeme, value);
-            return;
-        }
-        if (enclosing != null) {
-            enclosing.assign(name, value);
+        if (vars.containsKey(name.lexeme())) {
+            vars.put(name.lexeme(), value);
             return;
         }
-        throw new Evaluator.RuntimeError(name, "Variable " + name.lexeme + " not defined");
+        throw new Evaluator.RuntimeError(name, "Variable " + name.lexeme() + " not defined");
     }
 
-    void assignAt(int distance, Token name, Object value) {
-        envAt(distance).vars.put(name.lexeme, value);
+    void assignAt(int distance, int slot, Object value) {
+        envAt(distance).values[slot] = value;
     }
 
     Object get(Token name) {
-        if (vars.containsKey(name.lexeme))
-            return vars.get(name.lexeme);
-        if (enclosing != null) return enclosing.get(name);
-        throw new Evaluator.RuntimeError(name, "Variable " + name.lexeme + " not defined");
+        if (vars.containsKey(name.lexeme()))
+            return vars.get(name.lexeme());
+        throw new Evaluator.RuntimeError(name, "Variable " + name.lexeme() + " not defined");
     }
 
-    Object getAt(int distance, String name) {
-        return envAt(distance).vars.get(name);
+    Object getAt(int distance, int slot) {
+        return envAt(distance).values[slot];
     }
 
     Environment envAt(int distance) {
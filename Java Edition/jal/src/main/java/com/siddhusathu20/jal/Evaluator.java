@@ -1,19 +1,59 @@
 package com.siddhusathu20.jal;
 
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Scanner;
 
-public class Evaluator implements Expression.Visitor<Object>, Statement.Visitor<Void> {
+public class Evaluator implements Expression.Visitor<Object>, Statement.Visitor<Evaluator.Completion> {
+    // Boxed small integers, shared like Integer.valueOf's cache
+    static final int BOX_MIN = -128;
+    static final int BOX_MAX = 1024;
+    static final Double[] boxes = new Double[BOX_MAX - BOX_MIN];
+    static {
+        for (int i = 0; i < boxes.length; i++)
+            boxes[i] = (double) (i + BOX_MIN);
+    }
+
     final Environment globals = new Environment();
     Environment env = globals;
-    Map<Expression, Integer> locals = new HashMap<>();
-    int loopCount = 0;
-    int breakCount = 0;
+    // Value carried by the latest RETURN completion until the call consumes it
+    Object returnValue = null;
+    // Number left by operand() when it returns NUMBER
+    double number;
+    static final Object NUMBER = new Object();
+    // The run's standard streams, each buffered on first use; with autoFlush every print is flushed at once
+    static final int IO_BUFFER = 1 << 16;
+    final InputStream stdin;
+    final Charset stdinCharset;
+    final PrintStream stdout;
+    PrintWriter out = null;
+    boolean autoFlush = false;
+    BufferedReader in = null;
+    // Set for --profile
+    Profiler profiler = null;
+    // Set for --stats
+    Stats stats = null;
+    // Set by the daemon once its client has gone; checked before every statement
+    volatile boolean cancelled = false;
 
     Evaluator() {
+        this(System.in, Charset.defaultCharset(), System.out);
+    }
+
+    Evaluator(InputStream stdin, Charset stdinCharset, PrintStream stdout) {
+        this.stdin = stdin;
+        this.stdinCharset = stdinCharset;
+        this.stdout = stdout;
         globals.define("print", new Callable() {
             @Override
             public int getArgc() {
@@ -21,8 +61,9 @@ public class Evaluator implements Expression.Visitor<Object>, Statement.Visitor<
             }
 
             @Override
-            public Object call(Evaluator evaluator, List<Object> args) {
-                System.out.print(stringCast(args.get(0)));
+            public Object call(Evaluator evaluator, Object[] args) {
+                out().print(stringCast(args[0]));
+                if (autoFlush) flush();
                 return null;
             }
 
@@ -39,8 +80,9 @@ public class Evaluator implements Expression.Visitor<Object>, Statement.Visitor<
             }
 
             @Override
-            public Object call(Evaluator evaluator, List<Object> args) {
-                System.out.println(stringCast(args.get(0)));
+            public Object call(Evaluator evaluator, Object[] args) {
+                out().println(stringCast(args[0]));
+                if (autoFlush) flush();
                 return null;
             }
 
@@ -57,12 +99,14 @@ public class Evaluator implements Expression.Visitor<Object>, Statement.Visitor<
             }
 
             @Override
-            public Object call(Evaluator evaluator, List<Object> args) {
-                Scanner input = new Scanner(System.in);
-                System.out.print(args.get(0));
-                String value = input.nextLine();
-                input = null;
-                return value;
+            public Object call(Evaluator evaluator, Object[] args) {
+                out().print(args[0]);
+                flush();
+                String line = readLine();
+                // Unlike readline(), input() expects an answer, so running out of input ends the script
+                if (line == null) throw new RuntimeError(null, "No more input");
+                if (stats != null) stats.strings++;
+                return line;
             }
 
             @Override
@@ -71,6 +115,52 @@ public class Evaluator implements Expression.Visitor<Object>, Statement.Visitor<
             }
         });
 
+        globals.define("readline", new Callable() {
+            @Override
+            public int getArgc() {
+                return 0;
+            }
+
+            @Override
+            public Object call(Evaluator evaluator, Object[] args) {
+                flush();
+                String line = readLine();
+                if (stats != null && line != null) stats.strings++;
+                return line;
+            }
+
+            @Override
+            public String toString() {
+                return "<native func readline>";
+            }
+        });
+
+        globals.define("readlines", new Callable() {
+            @Override
+            public int getArgc() {
+                return 0;
+            }
+
+            @Override
+            public Object call(Evaluator evaluator, Object[] args) {
+                flush();
+                List<Object> lines = new ArrayList<>();
+                String line;
+                while ((line = readLine()) != null)
+                    lines.add(line);
+                if (stats != null) {
+                    stats.arrays++;
+                    stats.strings += lines.size();
+                }
+                return new JALArray(lines.toArray(), lines.size());
+            }
+
+            @Override
+            public String toString() {
+                return "<native func readlines>";
+            }
+        });
+
         globals.define("time", new Callable() {
             @Override
             public int getArgc() {
@@ -78,7 +168,7 @@ public class Evaluator implements Expression.Visitor<Object>, Statement.Visitor<
             }
 
             @Override
-            public Object call(Evaluator evaluator, List<Object> args) {
+            public Object call(Evaluator evaluator, Object[] args) {
                 return (double) System.currentTimeMillis() / 1000.0;
             }
 
@@ -87,6 +177,123 @@ public class Evaluator implements Expression.Visitor<Object>, Statement.Visitor<
                 return "<native func time>";
             }
         });
+
+        globals.define("flush", new Callable() {
+            @Override
+            public int getArgc() {
+                return 0;
+            }
+
+            @Override
+            public Object call(Evaluator evaluator, Object[] args) {
+                flush();
+                return null;
+            }
+
+            @Override
+            public String toString() {
+                return "<native func flush>";
+            }
+        });
+
+        globals.define("len", new Callable() {
+            @Override
+            public int getArgc() {
+                return 1;
+            }
+
+            @Override
+            public Object call(Evaluator evaluator, Object[] args) {
+                if (args[0] instanceof CharSequence)
+                    return (double) ((CharSequence) args[0]).length();
+                return (double) arrayArg(args[0]).size;
+            }
+
+            @Override
+            public String toString() {
+                return "<native func len>";
+            }
+        });
+
+        globals.define("push", new Callable() {
+            @Override
+            public int getArgc() {
+                return 2;
+            }
+
+            @Override
+            public Object call(Evaluator evaluator, Object[] args) {
+                arrayArg(args[0]).push(args[1]);
+                return null;
+            }
+
+            @Override
+            public String toString() {
+                return "<native func push>";
+            }
+        });
+
+        globals.define("pop", new Callable() {
+            @Override
+            public int getArgc() {
+                return 1;
+            }
+
+            @Override
+            public Object call(Evaluator evaluator, Object[] args) {
+                JALArray array = arrayArg(args[0]);
+                if (array.size == 0)
+                    throw new RuntimeError(null, "Cannot pop from an empty array");
+                return array.pop();
+            }
+
+            @Override
+            public String toString() {
+                return "<native func pop>";
+            }
+        });
+
+        globals.define("insert", new Callable() {
+            @Override
+            public int getArgc() {
+                return 3;
+            }
+
+            @Override
+            public Object call(Evaluator evaluator, Object[] args) {
+                JALArray array = arrayArg(args[0]);
+                array.insert(positionArg(args[1], array), args[2]);
+                return null;
+            }
+
+            @Override
+            public String toString() {
+                return "<native func insert>";
+            }
+        });
+
+        globals.define("slice", new Callable() {
+            @Override
+            public int getArgc() {
+                return 3;
+            }
+
+            @Override
+            public Object call(Evaluator evaluator, Object[] args) {
+                JALArray array = arrayArg(args[0]);
+                int from = positionArg(args[1], array);
+                int to = positionArg(args[2], array);
+                if (from > to)
+                    throw new RuntimeError(null, "Index out of bounds");
+                if (stats != null) stats.arrays++;
+                return array.slice(from, to);
+            }
+
+            @Override
+            public String toString() {
+                return "<native func slice>";
+            }
+        });
     }
     
     public void interpret(List<Statement> statements) {
@@ -95,125 +302,209 @@ public class Evaluator implements Expression.Visitor<Object>, Statement.Visitor<
                 exec(stmt);
             }
         } catch (RuntimeError e) {
+            flush();
             Main.runtimeError(e);
         }
     }
 
-    public Void visit(Statement.FuncDef stmt) {
+    PrintWriter out() {
+        if (out == null)
+            out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(stdout, stdout.charset()), IO_BUFFER));
+        return out;
+    }
+
+    void flush() {
+        if (out != null) out.flush();
+    }
+
+    // Returns null once standard input is exhausted
+    String readLine() {
+        if (in == null)
+            in = new BufferedReader(new InputStreamReader(stdin, stdinCharset), IO_BUFFER);
+        try {
+            return in.readLine();
+        } catch (IOException e) {
+            throw new RuntimeError(null, "Could not read input: " + e.getMessage());
+        }
+    }
+
+    public Completion visit(Statement.FuncDef stmt) {
         Function func = new Function(stmt, env, false);
-        env.define(stmt.name.lexeme, func);
-        return null;
+        define(stmt.slot, stmt.name, func);
+        return Completion.NORMAL;
     }
 
-    public Void visit(Statement.Class stmt) {
+    public Completion visit(Statement.Class stmt) {
         Object superclass = null;
         if (stmt.superclass != null) {
             superclass = eval(stmt.superclass);
             if (!(superclass instanceof JALClass))
                 throw new RuntimeError(stmt.superclass.name, "Can only inherit from a class");
         }
-        env.define(stmt.name.lexeme, null);
+        define(stmt.slot, stmt.name, null);
         if (stmt.superclass != null) {
-            env = new Environment(env);
-            env.define("super", superclass);
+            if (stats != null) stats.environments++;
+            env = new Environment(env, 1);
+            env.define(0, superclass);
         }
         Map<String, Function> methods = new HashMap<>();
         for (Statement.FuncDef method : stmt.methods) {
-            Function func = new Function(method, env, method.name.lexeme.equals("constructor"));
-            methods.put(method.name.lexeme, func);
+            Function func = new Function(method, env, method.name.lexeme().equals("constructor"));
+            methods.put(method.name.lexeme(), func);
         }
-        JALClass cls = new JALClass(stmt.name.lexeme, methods, (JALClass) superclass);
+        JALClass cls = new JALClass(stmt.name.lexeme(), methods, (JALClass) superclass);
         if (stmt.superclass != null) {
             env = env.enclosing;
         }
-        env.assign(stmt.name, cls);
-        return null;
+        define(stmt.slot, stmt.name, cls);
+        return Completion.NORMAL;
     }
 
-    public Void visit(Statement.Return stmt) {
+    public Completion visit(Statement.Return stmt) {
         Object value = null;
         if (stmt.value != null)
             value = eval(stmt.value);
-        throw new Return(value);
+        returnValue = value;
+        return Completion.RETURN;
     }
 
-    public Void visit(Statement.Block stmt) {
-        execBlock(stmt.statements, new Environment(env));
-        return null;
+    public Completion visit(Statement.Block stmt) {
+        if (stats != null) stats.environments++;
+        return execBlock(stmt.statements, new Environment(env, stmt.slotCount));
     }
 
-    public Void visit(Statement.IfStmt stmt) {
+    public Completion visit(Statement.IfStmt stmt) {
         if (isTrue(eval(stmt.condition)))
-            exec(stmt.thenBranch);
-        else
-            exec(stmt.elseBranch);
-        return null;
+            return exec(stmt.thenBranch);
+        return exec(stmt.elseBranch);
     }
 
-    public Void visit(Statement.WhileLoop stmt) {
-        loopCount++;
-        int currentLoop = loopCount;
-        while (isTrue(eval(stmt.condition)) && loopCount == currentLoop) {
-            exec(stmt.body);
+    public Completion visit(Statement.WhileLoop stmt) {
+        while (stmt.condition == null || isTrue(eval(stmt.condition))) {
+            Completion completion = exec(stmt.body);
+            if (completion == Completion.BREAK) break;
+            if (completion == Completion.RETURN) return completion;
+            if (stmt.update != null) eval(stmt.update);
         }
-        if (breakCount > loopCount) breakCount--;
-        else loopCount--;
-        return null;
+        return Completion.NORMAL;
     }
 
-    public Void visit(Statement.TimesLoop stmt) {
-        loopCount++;
-        int currentLoop = loopCount;
-        for (int i = 0; i < (double) eval(stmt.count) && loopCount == currentLoop; i++) {
-            exec(stmt.body);
+    public Completion visit(Statement.TimesLoop stmt) {
+        for (int i = 0; i < (double) eval(stmt.count); i++) {
+            Completion completion = exec(stmt.body);
+            if (completion == Completion.BREAK) break;
+            if (completion == Completion.RETURN) return completion;
         }
-        if (breakCount > loopCount) breakCount--;
-        else loopCount--;
-        return null;
+        return Completion.NORMAL;
     }
 
-    public Void visit(Statement.Break stmt) {
-        breakCount++;
-        if (breakCount > loopCount) {
-            breakCount--;
-            throw new RuntimeError(stmt.keyword, "Unexpected 'break' statement");
-        }
-        loopCount--;
-        return null;
+    public Completion visit(Statement.Break stmt) {
+        return Completion.BREAK;
     }
 
-    public Void visit(Statement.LetStmt stmt) {
+    public Completion visit(Statement.Continue stmt) {
+        return Completion.CONTINUE;
+    }
+
+    public Completion visit(Statement.LetStmt stmt) {
         Object value = null;
         if (stmt.value != null)
             value = eval(stmt.value);
-        env.define(stmt.name.lexeme, value);
-        return null;
+        define(stmt.slot, stmt.name, value);
+        return Completion.NORMAL;
     }
 
-    public Void visit(Statement.ExprStmt stmt) {
+    public Completion visit(Statement.ExprStmt stmt) {
         eval(stmt.expr);
-        return null;
+        return Completion.NORMAL;
     }
 
     public Object visit(Expression.FuncCall expr) {
-        Object callee = eval(expr.func);
-        List<Object> args = new ArrayList<>();
-        for (Expression arg : expr.args) {
-            args.add(eval(arg));
+        if (expr.func instanceof Expression.Getter)
+            return invoke(expr, (Expression.Getter) expr.func);
+        if (expr.func instanceof Expression.Super)
+            return invokeSuper(expr, (Expression.Super) expr.func);
+        return call(expr, eval(expr.func));
+    }
+
+    // obj.method(args) runs the method with obj in slot 0 of its frame instead of binding it first
+    Object invoke(Expression.FuncCall expr, Expression.Getter getter) {
+        Object object = eval(getter.object);
+        if (!(object instanceof JALInstance))
+            throw new RuntimeError(getter.name, "Object has no accessible properties");
+        JALInstance instance = (JALInstance) object;
+        String name = getter.name.lexeme();
+        int slot = getter.fields.lookUp(instance.shape, name);
+        if (slot >= 0)
+            return call(expr, instance.values[slot]);
+        Function method = getter.methods.lookUp(instance.cls, name);
+        if (method == null)
+            throw new RuntimeError(getter.name, "Undefined property '" + name + "'");
+        return invokeMethod(expr, method, instance);
+    }
+
+    Object invokeSuper(Expression.FuncCall expr, Expression.Super sup) {
+        JALClass superclass = (JALClass) env.getAt(sup.depth, sup.slot);
+        JALInstance instance = (JALInstance) env.getAt(sup.depth - 1, 0);
+        Function method = superclass.getMethod(sup.method.lexeme());
+        if (method == null)
+            throw new RuntimeError(sup.method, "Undefined property '" + sup.method.lexeme() + "'");
+        return invokeMethod(expr, method, instance);
+    }
+
+    Object invokeMethod(Expression.FuncCall expr, Function method, JALInstance instance) {
+        int argc = expr.args.size();
+        if (method.getArgc() != argc)
+            return call(expr, bind(method, instance));
+        if (stats != null) stats.methodCalls++;
+        Environment frame = method.frame(this);
+        frame.values[0] = instance;
+        for (int i = 0; i < argc; i++) {
+            frame.values[i + 1] = eval(expr.args.get(i));
+        }
+        return method.invoke(this, frame, expr.bracket.line);
+    }
+
+    Object call(Expression.FuncCall expr, Object callee) {
+        int argc = expr.args.size();
+        if (callee instanceof Function && ((Function) callee).getArgc() == argc) {
+            // Arguments are evaluated straight into the callee's frame
+            Function func = (Function) callee;
+            Environment frame = func.frame(this);
+            for (int i = 0; i < argc; i++) {
+                frame.values[i] = eval(expr.args.get(i));
+            }
+            return func.invoke(this, frame, expr.bracket.line);
+        }
+        if (callee instanceof JALClass) {
+            JALClass cls = (JALClass) callee;
+            if (cls.init != null && cls.init.getArgc() == argc) {
+                JALInstance instance = new JALInstance(cls);
+                invokeMethod(expr, cls.init, instance);
+                return instance;
+            }
+        }
+        Object[] args = new Object[argc];
+        for (int i = 0; i < argc; i++) {
+            args[i] = eval(expr.args.get(i));
         }
         if (!(callee instanceof Callable))
             throw new RuntimeError(expr.bracket, "Calls are only valid for functions");
         Callable func = (Callable) callee;
-        if (args.size() != func.getArgc())
-            throw new RuntimeError(expr.bracket, "Expected " + func.getArgc() + " arguments but got " + args.size());
-        return func.call(this, args);
+        if (argc != func.getArgc())
+            throw new RuntimeError(expr.bracket, "Expected " + func.getArgc() + " arguments but got " + argc);
+        if (profiler != null) profiler.line = expr.bracket.line;
+        try {
+            return func.call(this, args);
+        } catch (RuntimeError e) {
+            throw e.at(expr.bracket);
+        }
     }
 
     public Object visit(Expression.Assignment expr) {
         Object value = eval(expr.value);
-        Integer distance = locals.get(expr);
-        if (distance != null) {
-            env.assignAt(distance, expr.name, value);
+        if (expr.depth >= 0) {
+            env.assignAt(expr.depth, expr.slot, value);
         } else {
             globals.assign(expr.name, value);
         }
@@ -229,32 +520,53 @@ public class Evaluator implements Expression.Visitor<Object>, Statement.Visitor<
     }
 
     public Object visit(Expression.Super expr) {
-        int distance = locals.get(expr);
-        JALClass superclass = (JALClass) env.getAt(distance, "super");
-        JALInstance instance = (JALInstance) env.getAt(distance - 1, "self");
-        Function method = superclass.getMethod(expr.method.lexeme);
+        JALClass superclass = (JALClass) env.getAt(expr.depth, expr.slot);
+        JALInstance instance = (JALInstance) env.getAt(expr.depth - 1, 0);
+        Function method = superclass.getMethod(expr.method.lexeme());
         if (method == null)
-            throw new RuntimeError(expr.method, "Undefined property '" + expr.method.lexeme + "'");
+            throw new RuntimeError(expr.method, "Undefined property '" + expr.method.lexeme() + "'");
+        return bind(method, instance);
+    }
+
+    BoundMethod bind(Function method, JALInstance instance) {
+        if (stats != null) stats.binds++;
         return method.bind(instance);
     }
 
     public Object visit(Expression.Getter expr) {
         Object object = eval(expr.object);
-        if (object instanceof JALInstance)
-            return ((JALInstance) object).get(expr.name);
-        throw new RuntimeError(expr.name, "Object has no accessible properties");
+        if (!(object instanceof JALInstance))
+            throw new RuntimeError(expr.name, "Object has no accessible properties");
+        Object value = ((JALInstance) object).get(expr.name, expr.fields, expr.methods);
+        if (stats != null && value instanceof BoundMethod) stats.binds++;
+        return value;
     }
 
-    @SuppressWarnings("unchecked")
     public Object visit(Expression.Index expr) {
+        return index(expr, false);
+    }
+
+    // With unboxed set, elements of number arrays are left in number and NUMBER is returned
+    Object index(Expression.Index expr, boolean unboxed) {
         Object object = eval(expr.object);
-        if (object instanceof ArrayList) {
-            Object index = eval(expr.index);
-            if (index instanceof Double && (Double) index % 1 == 0)
-                return ((List<Object>) object).get(((Double) eval(expr.index)).intValue());
-            throw new RuntimeError(expr.bracket, "Invalid index");
+        if (!(object instanceof JALArray))
+            throw new RuntimeError(expr.bracket, "Cannot index that object");
+        JALArray array = (JALArray) object;
+        int i = checkIndex(array, eval(expr.index), expr.bracket);
+        if (unboxed && array.numbers != null) {
+            number = array.number(i);
+            return NUMBER;
         }
-        throw new RuntimeError(expr.bracket, "Cannot index that object");
+        return array.get(i);
+    }
+
+    int checkIndex(JALArray array, Object index, Token bracket) {
+        if (!(index instanceof Double && (Double) index % 1 == 0))
+            throw new RuntimeError(bracket, "Invalid index");
+        double i = (double) index;
+        if (i < 0 || i >= array.size)
+            throw new RuntimeError(bracket, "Index out of bounds");
+        return (int) i;
     }
 
     public Object visit(Expression.Setter expr) {
@@ -262,21 +574,17 @@ public class Evaluator implements Expression.Visitor<Object>, Statement.Visitor<
         if (!(object instanceof JALInstance))
             throw new RuntimeError(expr.name, "Object has no accessible properties");
         Object value = eval(expr.value);
-        ((JALInstance) object).set(expr.name, value);
+        ((JALInstance) object).set(expr.name, expr.fields, value);
         return value;
     }
 
-    @SuppressWarnings("unchecked")
     public Object visit(Expression.SetIndex expr) {
         Object object = eval(expr.object);
-        if (!(object instanceof ArrayList))
+        if (!(object instanceof JALArray))
             throw new RuntimeError(expr.bracket, "Cannot index that object");
+        JALArray array = (JALArray) object;
         Object value = eval(expr.value);
-        Object index = eval(expr.index);
-            if (index instanceof Double && (Double) index % 1 == 0)
-                ((List<Object>) object).set(((Double) eval(expr.index)).intValue(), value);
-            else
-                throw new RuntimeError(expr.bracket, "Invalid index");
+        array.set(checkIndex(array, eval(expr.index), expr.bracket), value);
         return value;
     }
     
@@ -285,11 +593,12 @@ public class Evaluator implements Expression.Visitor<Object>, Statement.Visitor<
     }
 
     public Object visit(Expression.Array expr) {
-        List<Object> elements = new ArrayList<>();
-        for (Expression element : expr.elements) {
-            elements.add(eval(element));
+        Object[] elements = new Object[expr.elements.size()];
+        for (int i = 0; i < elements.length; i++) {
+            elements[i] = eval(expr.elements.get(i));
         }
-        return elements;
+        if (stats != null) stats.arrays++;
+        return JALArray.of(elements);
     }
 
     public Object visit(Expression.Group expr) {
@@ -307,24 +616,17 @@ public class Evaluator implements Expression.Visitor<Object>, Statement.Visitor<
     }
 
     public Object visit(Expression.Unary expr) {
+        switch (expr.operator.type) {
+            case MINUS:
+            case NUMOF:
+                return box(evalNumber(expr));
+            default:
+                break;
+        }
         Object right = eval(expr.right);
         switch (expr.operator.type) {
             case EXCL:
                 return !isTrue(right);
-            case MINUS:
-                verifyNumberOperands(expr.operator, right);
-                return - (double) right;
-            case NUMOF:
-                if (right instanceof Double)
-                    return (double) right;
-                if (right instanceof String) {
-                    try {
-                        return Double.parseDouble((String) right);
-                    } catch (Exception e) {
-                        throw new RuntimeError(expr.operator, "Cannot convert \"" + (String) right + "\" to a number");
-                    }
-                }
-                throw new RuntimeError(expr.operator, "Invalid typecast");
             case STROF:
                 return stringCast(right);
             default:
@@ -333,89 +635,155 @@ public class Evaluator implements Expression.Visitor<Object>, Statement.Visitor<
         return null;
     }
 
-    @SuppressWarnings("unchecked")
     public Object visit(Expression.Binary expr) {
-        Object left = eval(expr.left);
-        Object right = eval(expr.right);
+        return expr.node.execute(this, expr);
+    }
+
+    Object eval(Expression expr) {
+        return expr.accept(this);
+    }
+
+    // Evaluates an expression flagged numeric without boxing intermediate results. Only the inside of
+    // an expression stays unboxed: its result, and so every call argument and return value, is boxed
+    // again, so call-heavy code such as fibonacci allocates less but runs no faster.
+    double evalNumber(Expression expr) {
+        if (expr instanceof Expression.Binary)
+            return arithmetic((Expression.Binary) expr);
+        if (expr instanceof Expression.Literal)
+            return (double) ((Expression.Literal) expr).value;
+        if (expr instanceof Expression.Group)
+            return evalNumber(((Expression.Group) expr).expr);
+        Expression.Unary unary = (Expression.Unary) expr;
+        if (unary.operator.type == TokenType.MINUS) {
+            if (unary.right.numeric)
+                return -evalNumber(unary.right);
+            Object right = eval(unary.right);
+            verifyNumberOperands(unary.operator, right);
+            return -(double) right;
+        }
+        Object right = eval(unary.right);
+        if (right instanceof Double)
+            return (double) right;
+        if (right instanceof CharSequence) {
+            try {
+                return Double.parseDouble(right.toString());
+            } catch (Exception e) {
+                throw new RuntimeError(unary.operator, "Cannot convert \"" + right + "\" to a number");
+            }
+        }
+        throw new RuntimeError(unary.operator, "Invalid typecast");
+    }
+
+    // Evaluates an operand of a numeric operator, leaving numbers known without boxing in number
+    Object operand(Expression expr) {
+        if (expr.numeric) {
+            number = evalNumber(expr);
+            return NUMBER;
+        }
+        if (expr instanceof Expression.Index)
+            return index((Expression.Index) expr, true);
+        return eval(expr);
+    }
+
+    double arithmetic(Expression.Binary expr) {
+        // Both operands are evaluated before either is type-checked
+        Object leftValue = operand(expr.left);
+        double left = number;
+        Object rightValue = operand(expr.right);
+        double right = number;
+        if (!(leftValue == NUMBER || leftValue instanceof Double)
+                || !(rightValue == NUMBER || rightValue instanceof Double))
+            throw operandsError(expr.operator);
+        if (leftValue != NUMBER) left = (double) leftValue;
+        if (rightValue != NUMBER) right = (double) rightValue;
         switch (expr.operator.type) {
             case ASTERISK:
-                verifyNumberOperands(expr.operator, left, right);
-                return (double) left * (double) right;
+                return left * right;
             case SLASH:
-                verifyNumberOperands(expr.operator, left, right);
-                if ((double) right != 0)
-                    return (double) left / (double) right;
+                if (right != 0)
+                    return left / right;
                 throw new RuntimeError(expr.operator, "Division by zero");
             case PERCENT:
-                verifyNumberOperands(expr.operator, left, right);
-                if ((double) right != 0)
-                    return (double) left % (double) right;
+                if (right != 0)
+                    return left % right;
                 throw new RuntimeError(expr.operator, "Division by zero");
             case MINUS:
-                verifyNumberOperands(expr.operator, left, right);
-                return (double) left - (double) right;
-            case PLUS:
-                if (left instanceof Double && right instanceof Double)
-                    return (double) left + (double) right;
-                if (left instanceof String && right instanceof String)
-                    return (String) left + (String) right;
-                if (left instanceof ArrayList && right instanceof ArrayList) {
-                    List<Object> newList = new ArrayList<>();
-                    newList.addAll((List<Object>) left);
-                    newList.addAll((List<Object>) right);
-                    return newList;
-                }
-                throw new RuntimeError(expr.operator, "Invalid operand type(s) - Operands must be numbers, strings or arrays.");
+                return left - right;
+            default:
+                return left + right;
+        }
+    }
+
+    boolean compare(Expression.Binary expr) {
+        Object leftValue = operand(expr.left);
+        double left = number;
+        Object rightValue = operand(expr.right);
+        double right = number;
+        if (!(leftValue == NUMBER || leftValue instanceof Double)
+                || !(rightValue == NUMBER || rightValue instanceof Double))
+            throw operandsError(expr.operator);
+        if (leftValue != NUMBER) left = (double) leftValue;
+        if (rightValue != NUMBER) right = (double) rightValue;
+        switch (expr.operator.type) {
             case GT:
-                verifyNumberOperands(expr.operator, left, right);
-                return (double) left > (double) right;
+                return left > right;
             case LT:
-                verifyNumberOperands(expr.operator, left, right);
-                return (double) left < (double) right;
+                return left < right;
             case GT_EQ:
-                verifyNumberOperands(expr.operator, left, right);
-                return (double) left >= (double) right;
-            case LT_EQ:
-                verifyNumberOperands(expr.operator, left, right);
-                return (double) left <= (double) right;
-            case DOUBLE_EQ:
-                return areEqual(left, right);
+                return left >= right;
             default:
-                break;
+                return left <= right;
         }
-        return null;
     }
 
-    Object eval(Expression expr) {
-        return expr.accept(this);
+    static Double box(double value) {
+        int i = (int) value;
+        // -0.0 compares equal to 0 but must keep its own box
+        if (i == value && i >= BOX_MIN && i < BOX_MAX && (i != 0 || Double.doubleToRawLongBits(value) == 0L))
+            return boxes[i - BOX_MIN];
+        return value;
     }
 
-    Object lookUpVar(Token name, Expression expr) {
-        Integer distance = locals.get(expr);
-        if (distance != null) {
-            return env.getAt(distance, name.lexeme);
+    Object lookUpVar(Token name, Expression.Reference expr) {
+        if (expr.depth >= 0) {
+            return env.getAt(expr.depth, expr.slot);
         } else {
             return globals.get(name);
         }
     }
 
-    void exec(Statement stmt) {
-        if (stmt != null) stmt.accept(this);
+    Completion exec(Statement stmt) {
+        if (cancelled) throw cancelled(stmt == null ? 0 : stmt.line);
+        if (stmt == null) return Completion.NORMAL;
+        if (profiler != null) profiler.line = stmt.line;
+        return stmt.accept(this);
     }
 
-    void execBlock(List<Statement> statements, Environment env) {
+    // Nobody is left to see it, but the error ends the run like any other
+    static RuntimeError cancelled(int line) {
+        return new RuntimeError(new Token(TokenType.EOF, "", null, line), "Run cancelled");
+    }
+
+    Completion execBlock(List<Statement> statements, Environment env) {
         Environment outer = this.env;
         try {
             this.env = env;
-            for (Statement stmt : statements)
-                exec(stmt);
+            if (stats != null) stats.depth(env);
+            for (Statement stmt : statements) {
+                Completion completion = exec(stmt);
+                if (completion != Completion.NORMAL) return completion;
+            }
+            return Completion.NORMAL;
         } finally {
             this.env = outer;
         }
     }
 
-    void resolve(Expression expr, int depth) {
-        locals.put(expr, depth);
+    void define(int slot, Token name, Object value) {
+        if (slot < 0)
+            env.define(name.lexeme(), value);
+        else
+            env.define(slot, value);
     }
 
     boolean isTrue(Object object) {
@@ -427,7 +795,7 @@ public class Evaluator implements Expression.Visitor<Object>, Statement.Visitor<
     boolean areEqual(Object x, Object y) {
         if (x == null && y == null) return true;
         if (x == null) return false;
-        return x.equals(y);
+        return Rope.flatten(x).equals(Rope.flatten(y));
     }
 
     void verifyNumberOperands(Token operation, Object operand) {
@@ -435,43 +803,79 @@ public class Evaluator implements Expression.Visitor<Object>, Statement.Visitor<
         throw new RuntimeError(operation, "Invalid operand type - operand must be a number.");
     }
 
-    void verifyNumberOperands(Token operation, Object left, Object right) {
-        if (left instanceof Double && right instanceof Double) return;
-        throw new RuntimeError(operation, "Invalid operand type(s) - operands must be numbers.");
+    RuntimeError operandsError(Token operation) {
+        return new RuntimeError(operation, "Invalid operand type(s) - operands must be numbers.");
+    }
+
+    static JALArray arrayArg(Object value) {
+        if (value instanceof JALArray) return (JALArray) value;
+        throw new RuntimeError(null, "Expected an array");
+    }
+
+    // An index from 0 to the array's size inclusive, as taken by insert and slice
+    static int positionArg(Object value, JALArray array) {
+        if (!(value instanceof Double && (Double) value % 1 == 0))
+            throw new RuntimeError(null, "Invalid index");
+        double i = (double) value;
+        if (i < 0 || i > array.size)
+            throw new RuntimeError(null, "Index out of bounds");
+        return (int) i;
     }
 
     String stringCast(Object value) {
         if (value == null) return "none";
-        if (value instanceof Double) {
-            String valueStr = value.toString();
-            if (valueStr.endsWith(".0"))
-                return valueStr.substring(0, valueStr.length() - 2);
-        }
-        if (value instanceof ArrayList) {
-            String arrayStr = "[";
-            @SuppressWarnings("unchecked")
-            List<Object> list = (List<Object>) value;
-            for (int i = 0; i < list.size(); i++) {
-                if (list.get(i) instanceof String)
-                    arrayStr += "\"" + (String) list.get(i) + "\"";
-                else
-                    arrayStr += stringCast(list.get(i));
-                if (i != list.size() - 1)
-                    arrayStr += ", ";
-            }
-            arrayStr += "]";
-            return arrayStr;
+        if (value instanceof Double)
+            return numberString((double) value);
+        if (value instanceof JALArray) {
+            StringBuilder out = new StringBuilder();
+            format(out, (JALArray) value, new ArrayList<>());
+            return out.toString();
         }
         return value.toString();
     }
 
-    static class Return extends RuntimeException {
-        final Object value;
+    static String numberString(double value) {
+        String valueStr = Double.toString(value);
+        if (valueStr.endsWith(".0"))
+            return valueStr.substring(0, valueStr.length() - 2);
+        return valueStr;
+    }
 
-        Return(Object value) {
-            super(null, null, false, false);
-            this.value = value;
+    // Writes an array and everything nested in it into one builder. open holds the arrays being
+    // written, so an array that contains itself prints as [...] instead of recursing forever.
+    void format(StringBuilder out, JALArray array, List<JALArray> open) {
+        for (JALArray outer : open) {
+            if (outer == array) {
+                out.append("[...]");
+                return;
+            }
         }
+        open.add(array);
+        out.append('[');
+        for (int i = 0; i < array.size; i++) {
+            if (i != 0) out.append(", ");
+            if (array.numbers != null) {
+                out.append(numberString(array.number(i)));
+                continue;
+            }
+            Object element = array.get(i);
+            if (element instanceof CharSequence)
+                out.append('"').append(element.toString()).append('"');
+            else if (element instanceof JALArray)
+                format(out, (JALArray) element, open);
+            else
+                out.append(stringCast(element));
+        }
+        out.append(']');
+        open.remove(open.size() - 1);
+    }
+
+    // How a statement finished; RETURN leaves its value in returnValue
+    enum Completion {
+        NORMAL,
+        RETURN,
+        BREAK,
+        CONTINUE
     }
 
     static class RuntimeError extends RuntimeException {
@@ -480,5 +884,11 @@ public class Evaluator implements Expression.Visitor<Object>, Statement.Visitor<
             super(msg);
             this.token = token;
         }
+
+        // Natives raise errors without a token; the call site supplies it
+        RuntimeError at(Token token) {
+            if (this.token != null) return this;
+            return new RuntimeError(token, getMessage());
+        }
     }
 }
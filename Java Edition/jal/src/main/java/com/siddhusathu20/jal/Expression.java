@@ -23,6 +23,14 @@ abstract class Expression {
 
     abstract<R> R accept(Visitor<R> visitor);
 
+    // True when the expression can only evaluate to a number (or fail)
+    boolean numeric = false;
+
+    abstract static class Reference extends Expression {
+        int depth = -1;
+        int slot;
+    }
+
     static class FuncCall extends Expression {
         final Expression func;
         final Token bracket;
@@ -55,7 +63,7 @@ abstract class Expression {
         }
     }
 
-    static class Assignment extends Expression {
+    static class Assignment extends Reference {
         final Token name;
         final Expression value;
 
@@ -70,7 +78,7 @@ abstract class Expression {
         }
     }
 
-    static class Variable extends Expression {
+    static class Variable extends Reference {
         final Token name;
 
         Variable(Token name) {
@@ -83,7 +91,7 @@ abstract class Expression {
         }
     }
 
-    static class Self extends Expression {
+    static class Self extends Reference {
         final Token keyword;
 
         Self(Token keyword) {
@@ -96,7 +104,7 @@ abstract class Expression {
         }
     }
 
-    static class Super extends Expression {
+    static class Super extends Reference {
         final Token keyword;
         final Token method;
 
@@ -114,6 +122,8 @@ abstract class Expression {
     static class Getter extends Expression {
         final Expression object;
         final Token name;
+        final FieldCache fields = new FieldCache();
+        final MethodCache methods = new MethodCache();
 
         Getter(Expression object, Token name) {
             this.object = object;
@@ -147,6 +157,7 @@ abstract class Expression {
         final Expression object;
         final Token name;
         final Expression value;
+        final FieldCache fields = new FieldCache();
 
         Setter(Expression object, Token name, Expression value) {
             this.object = object;
@@ -200,11 +211,26 @@ abstract class Expression {
         final Expression left;
         final Token operator;
         final Expression right;
+        BinaryNode node;
 
         Binary(Expression left, Token operator, Expression right) {
             this.left = left;
             this.operator = operator;
             this.right = right;
+            switch (operator.type) {
+                case ASTERISK:
+                case SLASH:
+                case PERCENT:
+                case MINUS:
+                    numeric = true;
+                    break;
+                case PLUS:
+                    numeric = left.numeric && right.numeric;
+                    break;
+                default:
+                    break;
+            }
+            node = BinaryNode.forOperator(operator.type, numeric);
         }
 
         @Override
@@ -220,6 +246,7 @@ abstract class Expression {
         Unary(Token operator, Expression right) {
             this.operator = operator;
             this.right = right;
+            this.numeric = operator.type == TokenType.MINUS || operator.type == TokenType.NUMOF;
         }
 
         @Override
@@ -233,6 +260,7 @@ abstract class Expression {
         
         Group(Expression expr) {
             this.expr = expr;
+            this.numeric = expr.numeric;
         }
 
         @Override
@@ -246,6 +274,7 @@ abstract class Expression {
         
         Literal(Object value) {
             this.value = value;
+            this.numeric = value instanceof Double;
         }
 
         @Override
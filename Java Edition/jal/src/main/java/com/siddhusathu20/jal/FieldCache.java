@@ -0,0 +1,32 @@
+package com.siddhusathu20.jal;
+
+// Field slot remembered by one property access site for the last shape it saw
+class FieldCache {
+    Shape shape = null;
+    int slot = -1;
+    // Shape an assignment at this site moves instances to
+    Shape next = null;
+
+    // Slot of the field, or -1 when instances of this shape don't have it
+    int lookUp(Shape shape, String name) {
+        if (shape != this.shape) {
+            this.shape = shape;
+            slot = shape.indexOf(name);
+        }
+        return slot;
+    }
+
+    // Shape after assigning the field, with its slot left in slot
+    Shape transition(Shape shape, String name) {
+        if (shape != this.shape) {
+            this.shape = shape;
+            slot = shape.indexOf(name);
+            next = shape;
+            if (slot < 0) {
+                slot = shape.size;
+                next = shape.with(name);
+            }
+        }
+        return next;
+    }
+}
@@ -1,11 +1,16 @@
 package com.siddhusathu20.jal;
 
-import java.util.List;
+import java.util.Arrays;
 
 public class Function implements Callable {
+    // Most frames kept for reuse by one function
+    static final int POOL_MAX = 32;
+
     final Statement.FuncDef declaration;
     final Environment closure;
     final boolean isConstructor;
+    Environment[] pool = null;
+    int pooled = 0;
 
     Function(Statement.FuncDef declaration, Environment closure, boolean isConstructor) {
         this.declaration = declaration;
@@ -19,29 +24,66 @@ public class Function implements Callable {
     }
 
     @Override
-    public Object call(Evaluator evaluator, List<Object> args) {
-        Environment env = new Environment(closure);
-        for (int i = 0; i < declaration.params.size(); i++) {
-            env.define(declaration.params.get(i).lexeme, args.get(i));
-        }
-        try {
-            evaluator.execBlock(declaration.body, env);
-        } catch (Evaluator.Return ret) {
-            if (isConstructor) return closure.getAt(0, "self");
-            return ret.value;
+    public Object call(Evaluator evaluator, Object[] args) {
+        Environment env = frame(evaluator);
+        System.arraycopy(args, 0, env.values, 0, args.length);
+        return invoke(evaluator, env, callLine(evaluator));
+    }
+
+    Object callMethod(Evaluator evaluator, JALInstance self, Object[] args) {
+        if (evaluator.stats != null) evaluator.stats.methodCalls++;
+        Environment env = frame(evaluator);
+        env.values[0] = self;
+        System.arraycopy(args, 0, env.values, 1, args.length);
+        return invoke(evaluator, env, callLine(evaluator));
+    }
+
+    // Calls through Callable have no call site; the evaluator leaves its line in the profiler
+    static int callLine(Evaluator evaluator) {
+        return evaluator.profiler == null ? 0 : evaluator.profiler.line;
+    }
+
+    // Environment for a new call. Parameters start at slot declaration.firstParam;
+    // methods keep self in slot 0.
+    Environment frame(Evaluator evaluator) {
+        if (pooled > 0) {
+            Environment env = pool[--pooled];
+            pool[pooled] = null;
+            return env;
         }
-        if (isConstructor) return closure.getAt(0, "self");
-        return null;
+        if (evaluator.stats != null) evaluator.stats.environments++;
+        return new Environment(closure, declaration.slotCount);
+    }
+
+    // line is the call site's, for the profiler
+    Object invoke(Evaluator evaluator, Environment env, int line) {
+        if (evaluator.profiler != null) evaluator.profiler.enter(this, line);
+        if (evaluator.stats != null) evaluator.stats.calls++;
+        Evaluator.Completion completion = evaluator.execBlock(declaration.body, env);
+        Object value = evaluator.returnValue;
+        evaluator.returnValue = null;
+        if (isConstructor) value = env.values[0];
+        else if (completion != Evaluator.Completion.RETURN) value = null;
+        release(env);
+        if (evaluator.profiler != null) evaluator.profiler.exit();
+        return value;
+    }
+
+    // Frames are only reused when nothing created during the call can refer to them
+    void release(Environment env) {
+        if (declaration.escapes) return;
+        if (pool == null) pool = new Environment[POOL_MAX];
+        if (pooled == POOL_MAX) return;
+        Arrays.fill(env.values, null);
+        pool[pooled++] = env;
     }
 
     @Override
     public String toString() {
-        return "<func " + declaration.name.lexeme + " >";
+        return "<func " + declaration.name.lexeme() + " >";
     }
 
-    Function bind(JALInstance inst) {
-        Environment env = new Environment(closure);
-        env.define("self", inst);
-        return new Function(declaration, env, isConstructor);
+    BoundMethod bind(JALInstance inst) {
+        return new BoundMethod(this, inst);
     }
 }
@@ -0,0 +1,174 @@
+package com.siddhusathu20.jal;
+
+import java.util.Arrays;
+
+// A JAL array. Elements stay unboxed in numbers while every element is a number; the first
+// non-number stored moves them to objects for good. Elements live at offset to offset + size - 1
+// of the storage, which may be longer to leave room for pushes, and which slices can share until
+// one of the sharing arrays is modified.
+public class JALArray {
+    // Slices at least this fraction of their source's storage share it instead of copying
+    static final int SHARE_RATIO = 4;
+
+    double[] numbers;
+    Object[] objects;
+    int offset = 0;
+    int size;
+    // True while the storage may be seen by another array
+    boolean shared = false;
+
+    JALArray(double[] numbers, int size) {
+        this.numbers = numbers;
+        this.size = size;
+    }
+
+    JALArray(Object[] objects, int size) {
+        this.objects = objects;
+        this.size = size;
+    }
+
+    static JALArray of(Object[] elements) {
+        double[] numbers = new double[elements.length];
+        for (int i = 0; i < elements.length; i++) {
+            if (!(elements[i] instanceof Double))
+                return new JALArray(elements, elements.length);
+            numbers[i] = (double) elements[i];
+        }
+        return new JALArray(numbers, elements.length);
+    }
+
+    Object get(int i) {
+        if (numbers != null) return Evaluator.box(numbers[offset + i]);
+        return objects[offset + i];
+    }
+
+    double number(int i) {
+        return numbers[offset + i];
+    }
+
+    void set(int i, Object value) {
+        reserve(size);
+        if (numbers != null) {
+            if (value instanceof Double) {
+                numbers[i] = (double) value;
+                return;
+            }
+            generalize();
+        }
+        objects[i] = value;
+    }
+
+    void push(Object value) {
+        reserve(size + 1);
+        size++;
+        set(size - 1, value);
+    }
+
+    Object pop() {
+        Object value = get(size - 1);
+        size--;
+        if (objects != null && !shared)
+            objects[offset + size] = null;
+        return value;
+    }
+
+    void insert(int i, Object value) {
+        reserve(size + 1);
+        if (numbers != null)
+            System.arraycopy(numbers, i, numbers, i + 1, size - i);
+        else
+            System.arraycopy(objects, i, objects, i + 1, size - i);
+        size++;
+        set(i, value);
+    }
+
+    JALArray slice(int from, int to) {
+        int length = to - from;
+        int capacity = numbers != null ? numbers.length : objects.length;
+        if (length * SHARE_RATIO < capacity) {
+            if (numbers != null)
+                return new JALArray(Arrays.copyOfRange(numbers, offset + from, offset + to), length);
+            return new JALArray(Arrays.copyOfRange(objects, offset + from, offset + to), length);
+        }
+        JALArray view = numbers != null ? new JALArray(numbers, length) : new JALArray(objects, length);
+        view.offset = offset + from;
+        view.shared = true;
+        shared = true;
+        return view;
+    }
+
+    // Makes the storage private to this array, starting at index 0 and holding at least capacity
+    // elements, before it is modified
+    void reserve(int capacity) {
+        int length = numbers != null ? numbers.length : objects.length;
+        if (!shared && offset == 0 && capacity <= length) return;
+        int newLength = Math.max(capacity, size);
+        if (capacity > length) newLength = Math.max(newLength, Math.max(8, length * 2));
+        if (numbers != null) {
+            double[] newNumbers = new double[newLength];
+            System.arraycopy(numbers, offset, newNumbers, 0, size);
+            numbers = newNumbers;
+        } else {
+            Object[] newObjects = new Object[newLength];
+            System.arraycopy(objects, offset, newObjects, 0, size);
+            objects = newObjects;
+        }
+        offset = 0;
+        shared = false;
+    }
+
+    void generalize() {
+        objects = new Object[numbers.length];
+        for (int i = 0; i < size; i++) {
+            objects[i] = Evaluator.box(numbers[i]);
+        }
+        numbers = null;
+    }
+
+    JALArray concat(JALArray other) {
+        int newSize = size + other.size;
+        if (numbers != null && other.numbers != null) {
+            double[] result = Arrays.copyOfRange(numbers, offset, offset + newSize);
+            System.arraycopy(other.numbers, other.offset, result, size, other.size);
+            return new JALArray(result, newSize);
+        }
+        Object[] result = new Object[newSize];
+        for (int i = 0; i < size; i++) {
+            result[i] = get(i);
+        }
+        for (int i = 0; i < other.size; i++) {
+            result[size + i] = other.get(i);
+        }
+        return new JALArray(result, newSize);
+    }
+
+    // Same rules as List.equals over boxed elements, so 0 and -0 differ and none equals none
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) return true;
+        if (!(obj instanceof JALArray)) return false;
+        JALArray other = (JALArray) obj;
+        if (size != other.size) return false;
+        for (int i = 0; i < size; i++) {
+            if (numbers != null && other.numbers != null) {
+                if (Double.doubleToLongBits(number(i)) != Double.doubleToLongBits(other.number(i)))
+                    return false;
+            } else {
+                Object x = get(i);
+                Object y = other.get(i);
+                if (x == null ? y != null : !Rope.flatten(x).equals(Rope.flatten(y))) return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = 1;
+        for (int i = 0; i < size; i++) {
+            Object element = get(i);
+            hash = 31 * hash + (element == null ? 0 : element.hashCode());
+        }
+        return hash;
+    }
+}
@@ -1,31 +1,34 @@
 package com.siddhusathu20.jal;
 
-import java.util.List;
 import java.util.Map;
 
 public class JALClass implements Callable {
     final String name;
     final Map<String, Function> methods;
     final JALClass superclass;
+    final Function init;
+    // Root of the shapes of this class's instances
+    final Shape shape = new Shape();
+    // Most fields any instance has had, used to size new instances
+    int fieldCount = 0;
 
     JALClass(String name, Map<String, Function> methods, JALClass superclass) {
         this.name = name;
         this.methods = methods;
         this.superclass = superclass;
+        this.init = getMethod("constructor");
     }
 
     @Override
-    public Object call(Evaluator evaluator, List<Object> args) {
+    public Object call(Evaluator evaluator, Object[] args) {
         JALInstance instance = new JALInstance(this);
-        Function init = getMethod("constructor");
         if (init != null)
-            init.bind(instance).call(evaluator, args);
+            init.callMethod(evaluator, instance, args);
         return instance;
     }
 
     @Override
     public int getArgc() {
-        Function init = getMethod("constructor");
         if (init == null) return 0;
         return init.getArgc();
     }
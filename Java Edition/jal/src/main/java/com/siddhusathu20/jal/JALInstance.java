@@ -1,26 +1,36 @@
 package com.siddhusathu20.jal;
 
-import java.util.Map;
-import java.util.HashMap;
+import java.util.Arrays;
 
 public class JALInstance {
     JALClass cls;
-    final Map<String, Object> fields = new HashMap<>();
+    Shape shape;
+    Object[] values;
 
     JALInstance(JALClass cls) {
         this.cls = cls;
+        this.shape = cls.shape;
+        this.values = new Object[cls.fieldCount];
     }
 
-    Object get(Token name) {
-        if (fields.containsKey(name.lexeme))
-            return fields.get(name.lexeme);
-        Function method = cls.getMethod(name.lexeme);
+    Object get(Token name, FieldCache fields, MethodCache methods) {
+        int slot = fields.lookUp(shape, name.lexeme());
+        if (slot >= 0) return values[slot];
+        Function method = methods.lookUp(cls, name.lexeme());
         if (method != null) return method.bind(this);
-        throw new Evaluator.RuntimeError(name, "Undefined property '" + name.lexeme + "'");
+        throw new Evaluator.RuntimeError(name, "Undefined property '" + name.lexeme() + "'");
     }
 
-    void set(Token name, Object value) {
-        fields.put(name.lexeme, value);
+    void set(Token name, FieldCache fields, Object value) {
+        Shape next = fields.transition(shape, name.lexeme());
+        if (next != shape) {
+            if (values.length < next.size)
+                values = Arrays.copyOf(values, Math.max(next.size, values.length * 2));
+            if (next.size > cls.fieldCount)
+                cls.fieldCount = next.size;
+            shape = next;
+        }
+        values[fields.slot] = value;
     }
 
     @Override
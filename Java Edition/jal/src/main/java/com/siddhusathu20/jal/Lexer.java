@@ -25,29 +25,46 @@ public class Lexer {
         keywords.put("strof", TokenType.STROF);
         keywords.put("do", TokenType.DO);
         keywords.put("break", TokenType.BREAK);
+        keywords.put("continue", TokenType.CONTINUE);
         keywords.put("times", TokenType.TIMES);
         keywords.put("class", TokenType.CLASS);
         keywords.put("self", TokenType.SELF);
         keywords.put("inherits", TokenType.INHERITS);
         keywords.put("super", TokenType.SUPER);
     }
-    final String src;
-    final List<Token> tokens = new ArrayList<>();
+    final CharSequence src;
+    final Symbols symbols = new Symbols();
+    // The token scanToken just produced, and the last one handed out
+    Token token = null;
+    Token last = null;
     int start = 0;
     int current = 0;
     int line = 1;
 
-    Lexer(String src) {
+    Lexer(CharSequence src) {
         this.src = src;
     }
 
     List<Token> scan() {
-        while (!atEnd()) {
+        List<Token> tokens = new ArrayList<>();
+        Token token;
+        do {
+            token = next();
+            tokens.add(token);
+        } while (token.type != TokenType.EOF);
+        return tokens;
+    }
+
+    // Scans just far enough to produce the next token; EOF is returned for every call past the end
+    Token next() {
+        while (token == null) {
+            if (atEnd()) return new Token(TokenType.EOF, "", null, line);
             start = current;
             scanToken();
         }
-        tokens.add(new Token(TokenType.EOF, "", null, line));
-        return tokens;
+        last = token;
+        token = null;
+        return last;
     }
 
     boolean atEnd() {
@@ -58,66 +75,72 @@ public class Lexer {
         char c = src.charAt(current++);
         switch (c) {
             case '(':
-                addToken(TokenType.L_BRACKET, null);
+                addToken(TokenType.L_BRACKET, "(");
                 break;
             case ')':
-                addToken(TokenType.R_BRACKET, null);
+                addToken(TokenType.R_BRACKET, ")");
                 break;
             case '{':
-                addToken(TokenType.L_BRACE, null);
+                addToken(TokenType.L_BRACE, "{");
                 break;
             case '}':
-                addToken(TokenType.R_BRACE, null);
+                addToken(TokenType.R_BRACE, "}");
                 break;
             case '[':
-                addToken(TokenType.L_SQ_BR, null);
+                addToken(TokenType.L_SQ_BR, "[");
                 break;
             case ']':
-                addToken(TokenType.R_SQ_BR, null);
+                addToken(TokenType.R_SQ_BR, "]");
                 break;
             case ',':
-                addToken(TokenType.COMMA, null);
+                addToken(TokenType.COMMA, ",");
                 break;
             case '.':
-                addToken(TokenType.DOT, null);
+                addToken(TokenType.DOT, ".");
                 break;
             case ';':
-                addToken(TokenType.SEMICOLON, null);
+                addToken(TokenType.SEMICOLON, ";");
                 break;
             case '-':
-                addToken(TokenType.MINUS, null);
+                addToken(TokenType.MINUS, "-");
                 break;
             case '+':
-                addToken(TokenType.PLUS, null);
+                addToken(TokenType.PLUS, "+");
                 break;
             case '*':
-                addToken(TokenType.ASTERISK, null);
+                addToken(TokenType.ASTERISK, "*");
                 break;
             case '/':
-                addToken(TokenType.SLASH, null);
+                addToken(TokenType.SLASH, "/");
                 break;
             case '%':
-                addToken(TokenType.PERCENT, null);
+                addToken(TokenType.PERCENT, "%");
                 break;
             case '#':
                 while (peek() != '\n') current++;
                 break;
             case '!':
-                addToken(next('=') ? TokenType.EXCL_EQ : TokenType.EXCL, null);
+                if (next('=')) addToken(TokenType.EXCL_EQ, "!=");
+                else addToken(TokenType.EXCL, "!");
                 break;
             case '=':
-                addToken(next('=') ? TokenType.DOUBLE_EQ : TokenType.EQ, null);
+                if (next('=')) addToken(TokenType.DOUBLE_EQ, "==");
+                else addToken(TokenType.EQ, "=");
                 break;
             case '<':
-                addToken(next('=') ? TokenType.LT_EQ : TokenType.LT, null);
+                if (next('=')) addToken(TokenType.LT_EQ, "<=");
+                else addToken(TokenType.LT, "<");
                 break;
             case '>':
-                addToken(next('=') ? TokenType.GT_EQ : TokenType.GT, null);
+                if (next('=')) addToken(TokenType.GT_EQ, ">=");
+                else addToken(TokenType.GT, ">");
                 break;
             case '\n':
-                if (tokens.get(tokens.size() - 1).type != TokenType.EOL
-                && tokens.get(tokens.size() - 1).type != TokenType.L_BRACE)
-                    addToken(TokenType.EOL, null);
+                // Leading blank or comment lines produce no EOL
+                if (last != null
+                && last.type != TokenType.EOL
+                && last.type != TokenType.L_BRACE)
+                    addToken(TokenType.EOL, "\n");
                 line++;
                 break;
             case ' ':
@@ -134,7 +157,7 @@ public class Lexer {
                     identifier();
                 } else {
                     Main.error(line, "Syntax error - Unexpected character:");
-                    System.err.println(c);
+                    Run.current().err.println(c);
                 }
                 break;
         }
@@ -157,9 +180,12 @@ public class Lexer {
         return true;
     }
 
-    void addToken(TokenType type, Object value) {
-        String lexeme = src.substring(start, current);
-        tokens.add(new Token(type, lexeme, value, line));
+    void addToken(TokenType type, String lexeme) {
+        token = new Token(type, lexeme, null, line);
+    }
+
+    void addLiteral(TokenType type, Object value) {
+        token = new Token(type, src, start, current, value, line);
     }
 
     boolean isAlphaUc(char c) {
@@ -175,43 +201,70 @@ public class Lexer {
     }
 
     void parseStr() {
+        StringBuilder str = null;
+        int from = start + 1;
         while (peek() != '"' && !atEnd()) {
-            if (peek() == '\n') line++;
-            current++;
+            char c = src.charAt(current++);
+            if (c == '\n') {
+                line++;
+            } else if (c == '\\' && !atEnd()) {
+                char escaped = escape(peek());
+                if (escaped != 0) {
+                    // Decoded strings are only built once an escape turns up
+                    if (str == null) str = new StringBuilder();
+                    str.append(src, from, current - 1).append(escaped);
+                    from = ++current;
+                }
+            }
         }
         if (atEnd()) {
             Main.error(line, "String not terminated (missing \" - punctuation is important!)");
             current++;
             return;
         }
+        String value;
+        if (str == null) value = src.subSequence(from, current).toString();
+        else value = str.append(src, from, current).toString();
         current++; // For closing quotes
-        String str = src.substring(start + 1, current - 1); // Exclude quotes
-        String escaped = str.replace("\\n", "\n")
-                            .replace("\\\"", "\"")
-                            .replace("\\t", "\t")
-                            .replace("\\\\", "\\")
-                            .replace("\\r", "\r")
-                            .replace("\\b", "\b")
-                            .replace("\\f", "\f")
-                            .replace("\\'", "\'");
-        addToken(TokenType.STR, escaped);
+        addLiteral(TokenType.STR, value);
+    }
+
+    // The character an escape sequence stands for, or 0 if the backslash is kept as it is
+    static char escape(char c) {
+        switch (c) {
+            case 'n': return '\n';
+            case 't': return '\t';
+            case 'r': return '\r';
+            case 'b': return '\b';
+            case 'f': return '\f';
+            case '"': return '"';
+            case '\'': return '\'';
+            case '\\': return '\\';
+            default: return 0;
+        }
     }
 
     void parseNum() {
-        while (isDigit(peek())) current++;
+        long integer = src.charAt(start) - '0';
+        while (isDigit(peek())) integer = integer * 10 + (src.charAt(current++) - '0');
         if (peek() == '.' && isDigit(peek2())) {
             current++;
             while (isDigit(peek())) current++;
+            addLiteral(TokenType.NUM, Double.parseDouble(src.subSequence(start, current).toString()));
+        } else if (current - start <= 15) {
+            // Up to 15 digits fit in a double exactly, so there is no need to go through parseDouble
+            addLiteral(TokenType.NUM, (double) integer);
+        } else {
+            addLiteral(TokenType.NUM, Double.parseDouble(src.subSequence(start, current).toString()));
         }
-        addToken(TokenType.NUM, Double.parseDouble(src.substring(start, current)));
     }
 
     void identifier() {
         while (isAlNumUc(peek())) current++;
-        String lexeme = src.substring(start, current);
+        String lexeme = symbols.intern(src, start, current);
         TokenType type = keywords.get(lexeme);
         if (type == null)
             type = TokenType.IDENTIFIER;
-        addToken(type, null);
+        addToken(type, lexeme);
     }
 }
@@ -1,48 +1,54 @@
 package com.siddhusathu20.jal;
 import java.io.IOException;
-import java.nio.file.Files;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Paths;
-import java.util.List;
 
 import com.siddhusathu20.jal.Evaluator.RuntimeError;
 
 public class Main {
 
-    static boolean errored = false;
-    static boolean runtimeErrored = false;
-
     public static void main(String[] args) throws IOException {
-        if (args.length != 1) {
-            System.out.println("Incorrect usage!");
+        if (args.length == 1 && args[0].startsWith("--daemon=")) {
+            new Daemon(Paths.get(args[0].substring("--daemon=".length()))).serve();
+            return;
+        }
+        Run run = new Run();
+        String problem = run.parse(args, null);
+        if (problem != null) {
+            System.out.println(problem);
             System.exit(64);
-        } else {
-            run(args[0]);
+        }
+        int status = run.execute();
+        if (status != 0) System.exit(status);
+    }
+
+    static ByteBuffer map(String path) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(path))) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
         }
     }
 
-    static void run(String path) throws IOException {
-        String src = Files.readString(Paths.get(path));
-        Lexer lexer = new Lexer(src);
-        List<Token> tokens = lexer.scan();
-        Parser parser = new Parser(tokens);
-        List<Statement> statements = parser.parse();
-        if (errored) System.exit(65);
-        Evaluator evaluator = new Evaluator();
-        Resolver resolver = new Resolver(evaluator);
-        resolver.resolve(statements);
-        if (errored) System.exit(65);
-        evaluator.interpret(statements);
-        if (runtimeErrored) System.exit(70);
+    // ASCII scripts are lexed straight from the mapping, anything else is decoded first
+    static CharSequence source(ByteBuffer bytes) throws IOException {
+        if (MappedSource.isAscii(bytes)) return new MappedSource(bytes);
+        return StandardCharsets.UTF_8.newDecoder().decode(bytes.duplicate());
     }
 
     static void error(int line, String msg) {
-        if (msg != null)
-            System.err.println("Error at line " + line + ": " + msg);
-        errored = true;
+        Run run = Run.current();
+        if (msg != null) {
+            // Output of the statements run before this one comes first
+            if (run.evaluator != null) run.evaluator.flush();
+            run.err.println("Error at line " + line + ": " + msg);
+        }
+        run.errored = true;
     }
 
     static void runtimeError(RuntimeError err) {
-        System.err.println("Error at line " + err.token.line + ": " + err.getMessage());
-        runtimeErrored = true;
+        Run run = Run.current();
+        run.err.println("Error at line " + err.token.line + ": " + err.getMessage());
+        run.runtimeErrored = true;
     }
 }
\ No newline at end of file
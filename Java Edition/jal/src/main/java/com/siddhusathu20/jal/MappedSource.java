@@ -0,0 +1,43 @@
+package com.siddhusathu20.jal;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+// An ASCII source read in place from a mapped file, so the script is never copied onto the heap.
+// Only the lexemes the lexer asks for become Strings.
+class MappedSource implements CharSequence {
+    final ByteBuffer bytes;
+
+    MappedSource(ByteBuffer bytes) {
+        this.bytes = bytes;
+    }
+
+    static boolean isAscii(ByteBuffer bytes) {
+        for (int i = 0; i < bytes.limit(); i++) {
+            if (bytes.get(i) < 0) return false;
+        }
+        return true;
+    }
+
+    @Override
+    public int length() {
+        return bytes.limit();
+    }
+
+    @Override
+    public char charAt(int index) {
+        return (char) bytes.get(index);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        byte[] chars = new byte[end - start];
+        bytes.get(start, chars);
+        return new String(chars, StandardCharsets.ISO_8859_1);
+    }
+
+    @Override
+    public String toString() {
+        return subSequence(0, length()).toString();
+    }
+}
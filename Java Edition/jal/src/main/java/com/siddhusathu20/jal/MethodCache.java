@@ -0,0 +1,24 @@
+package com.siddhusathu20.jal;
+
+// Method lookups remembered by one property access site, keyed by the receiver's class.
+// A site starts monomorphic and grows to a few classes; beyond that it looks methods up uncached.
+class MethodCache {
+    static final int MAX_ENTRIES = 4;
+
+    final JALClass[] classes = new JALClass[MAX_ENTRIES];
+    final Function[] methods = new Function[MAX_ENTRIES];
+    int size = 0;
+
+    Function lookUp(JALClass cls, String name) {
+        for (int i = 0; i < size; i++) {
+            if (classes[i] == cls) return methods[i];
+        }
+        Function method = cls.getMethod(name);
+        if (size < MAX_ENTRIES) {
+            classes[size] = cls;
+            methods[size] = method;
+            size++;
+        }
+        return method;
+    }
+}
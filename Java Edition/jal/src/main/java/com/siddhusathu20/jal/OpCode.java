@@ -0,0 +1,20 @@
+package com.siddhusathu20.jal;
+
+public enum OpCode {
+    CONSTANT, NONE, TRUE, FALSE, POP,
+
+    GET_LOCAL, SET_LOCAL, GET_UPVALUE, SET_UPVALUE,
+    GET_GLOBAL, DEFINE_GLOBAL, SET_GLOBAL,
+
+    GET_PROPERTY, SET_PROPERTY, GET_SUPER,
+    INDEX, SET_INDEX, ARRAY,
+
+    EQUAL, GREATER, GREATER_EQUAL, LESS, LESS_EQUAL,
+    ADD, SUBTRACT, MULTIPLY, DIVIDE, MODULO,
+    NOT, NEGATE, NUMOF, STROF,
+
+    JUMP, JUMP_IF_FALSE, LOOP,
+    CALL, INVOKE, CLOSURE, CLOSE_UPVALUE, RETURN,
+
+    CLASS, INHERIT, METHOD
+}
@@ -0,0 +1,274 @@
+package com.siddhusathu20.jal;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Rewrites a resolved tree before it runs: operators over literals are folded into literals, groups
+// are unwrapped, branches on a literal condition keep only the side that runs, and loops on a
+// literal true condition stop testing it. Folding evaluates the node itself, so results match the
+// evaluator exactly; a node whose evaluation fails is left alone to fail at run time with its line.
+// Rebuilt nodes keep their tokens, lines and the resolver's annotations.
+public class Optimizer implements Expression.Visitor<Expression>, Statement.Visitor<Statement> {
+    Evaluator evaluator = null;
+
+    List<Statement> optimize(List<Statement> statements) {
+        List<Statement> optimized = new ArrayList<>(statements.size());
+        boolean changed = false;
+        for (Statement stmt : statements) {
+            Statement result = optimize(stmt);
+            if (result != null) optimized.add(result);
+            changed |= result != stmt;
+        }
+        return changed ? optimized : statements;
+    }
+
+    Statement optimize(Statement stmt) {
+        if (stmt == null) return null;
+        return stmt.accept(this);
+    }
+
+    Expression optimize(Expression expr) {
+        if (expr == null) return null;
+        return expr.accept(this);
+    }
+
+    List<Expression> optimizeAll(List<Expression> exprs) {
+        List<Expression> optimized = new ArrayList<>(exprs.size());
+        boolean changed = false;
+        for (Expression expr : exprs) {
+            Expression result = optimize(expr);
+            optimized.add(result);
+            changed |= result != expr;
+        }
+        return changed ? optimized : exprs;
+    }
+
+    Expression fold(Expression expr) {
+        if (evaluator == null) evaluator = new Evaluator();
+        Object value;
+        try {
+            value = evaluator.eval(expr);
+        } catch (Evaluator.RuntimeError e) {
+            return expr;
+        }
+        if (value instanceof Rope) value = value.toString();
+        if (value == null || value instanceof Boolean || value instanceof Double || value instanceof String)
+            return new Expression.Literal(value);
+        return expr;
+    }
+
+    static boolean isLiteral(Expression expr) {
+        return expr instanceof Expression.Literal;
+    }
+
+    boolean isTrue(Expression.Literal literal) {
+        if (evaluator == null) evaluator = new Evaluator();
+        return evaluator.isTrue(literal.value);
+    }
+
+    static <T extends Expression.Reference> T copy(Expression.Reference from, T to) {
+        to.depth = from.depth;
+        to.slot = from.slot;
+        return to;
+    }
+
+    static <T extends Statement> T at(Statement from, T to) {
+        to.line = from.line;
+        return to;
+    }
+
+    public Expression visit(Expression.Binary expr) {
+        Expression left = optimize(expr.left);
+        Expression right = optimize(expr.right);
+        if (left != expr.left || right != expr.right)
+            expr = new Expression.Binary(left, expr.operator, right);
+        if (isLiteral(left) && isLiteral(right)) return fold(expr);
+        return expr;
+    }
+
+    public Expression visit(Expression.Unary expr) {
+        Expression right = optimize(expr.right);
+        if (right != expr.right)
+            expr = new Expression.Unary(expr.operator, right);
+        if (isLiteral(right)) return fold(expr);
+        return expr;
+    }
+
+    public Expression visit(Expression.Group expr) {
+        return optimize(expr.expr);
+    }
+
+    public Expression visit(Expression.Literal expr) {
+        return expr;
+    }
+
+    public Expression visit(Expression.Array expr) {
+        List<Expression> elements = optimizeAll(expr.elements);
+        if (elements == expr.elements) return expr;
+        return new Expression.Array(expr.bracket, elements);
+    }
+
+    public Expression visit(Expression.Variable expr) {
+        return expr;
+    }
+
+    public Expression visit(Expression.Self expr) {
+        return expr;
+    }
+
+    public Expression visit(Expression.Super expr) {
+        return expr;
+    }
+
+    public Expression visit(Expression.Getter expr) {
+        Expression object = optimize(expr.object);
+        if (object == expr.object) return expr;
+        return new Expression.Getter(object, expr.name);
+    }
+
+    public Expression visit(Expression.Setter expr) {
+        Expression object = optimize(expr.object);
+        Expression value = optimize(expr.value);
+        if (object == expr.object && value == expr.value) return expr;
+        return new Expression.Setter(object, expr.name, value);
+    }
+
+    public Expression visit(Expression.Index expr) {
+        Expression object = optimize(expr.object);
+        Expression index = optimize(expr.index);
+        if (object == expr.object && index == expr.index) return expr;
+        return new Expression.Index(object, expr.bracket, index);
+    }
+
+    public Expression visit(Expression.SetIndex expr) {
+        Expression object = optimize(expr.object);
+        Expression index = optimize(expr.index);
+        Expression value = optimize(expr.value);
+        if (object == expr.object && index == expr.index && value == expr.value) return expr;
+        return new Expression.SetIndex(object, expr.bracket, index, value);
+    }
+
+    public Expression visit(Expression.Assignment expr) {
+        Expression value = optimize(expr.value);
+        if (value == expr.value) return expr;
+        return copy(expr, new Expression.Assignment(expr.name, value));
+    }
+
+    // A literal left operand decides the result on its own or hands it to the right operand
+    public Expression visit(Expression.Logical expr) {
+        Expression left = optimize(expr.left);
+        Expression right = optimize(expr.right);
+        if (isLiteral(left)) {
+            boolean truthy = isTrue((Expression.Literal) left);
+            boolean shortCircuits = expr.operator.type == TokenType.OR ? truthy : !truthy;
+            return shortCircuits ? left : right;
+        }
+        if (left == expr.left && right == expr.right) return expr;
+        return new Expression.Logical(left, expr.operator, right);
+    }
+
+    public Expression visit(Expression.FuncCall expr) {
+        Expression func = optimize(expr.func);
+        List<Expression> args = optimizeAll(expr.args);
+        if (func == expr.func && args == expr.args) return expr;
+        return new Expression.FuncCall(func, expr.bracket, args);
+    }
+
+    // A statement that is only a literal does nothing and is dropped
+    public Statement visit(Statement.ExprStmt stmt) {
+        Expression expr = optimize(stmt.expr);
+        if (isLiteral(expr)) return null;
+        if (expr == stmt.expr) return stmt;
+        return at(stmt, new Statement.ExprStmt(expr));
+    }
+
+    public Statement visit(Statement.LetStmt stmt) {
+        Expression value = optimize(stmt.value);
+        if (value == stmt.value) return stmt;
+        Statement.LetStmt optimized = at(stmt, new Statement.LetStmt(stmt.name, value));
+        optimized.slot = stmt.slot;
+        return optimized;
+    }
+
+    public Statement visit(Statement.Block stmt) {
+        List<Statement> statements = optimize(stmt.statements);
+        if (statements == stmt.statements) return stmt;
+        Statement.Block optimized = at(stmt, new Statement.Block(statements));
+        optimized.slotCount = stmt.slotCount;
+        return optimized;
+    }
+
+    public Statement visit(Statement.IfStmt stmt) {
+        Expression condition = optimize(stmt.condition);
+        if (isLiteral(condition))
+            return optimize(isTrue((Expression.Literal) condition) ? stmt.thenBranch : stmt.elseBranch);
+        Statement thenBranch = optimize(stmt.thenBranch);
+        Statement elseBranch = optimize(stmt.elseBranch);
+        if (condition == stmt.condition && thenBranch == stmt.thenBranch && elseBranch == stmt.elseBranch)
+            return stmt;
+        return at(stmt, new Statement.IfStmt(condition, thenBranch, elseBranch));
+    }
+
+    // A loop that never runs is dropped; one that always runs has its condition removed
+    public Statement visit(Statement.WhileLoop stmt) {
+        Expression condition = optimize(stmt.condition);
+        if (isLiteral(condition)) {
+            if (!isTrue((Expression.Literal) condition)) return null;
+            condition = null;
+        }
+        Statement body = optimize(stmt.body);
+        Expression update = optimize(stmt.update);
+        if (condition == stmt.condition && body == stmt.body && update == stmt.update) return stmt;
+        return at(stmt, new Statement.WhileLoop(condition, body, update));
+    }
+
+    public Statement visit(Statement.TimesLoop stmt) {
+        Expression count = optimize(stmt.count);
+        Statement body = optimize(stmt.body);
+        if (count == stmt.count && body == stmt.body) return stmt;
+        return at(stmt, new Statement.TimesLoop(count, body));
+    }
+
+    public Statement visit(Statement.Break stmt) {
+        return stmt;
+    }
+
+    public Statement visit(Statement.Continue stmt) {
+        return stmt;
+    }
+
+    public Statement visit(Statement.Return stmt) {
+        Expression value = optimize(stmt.value);
+        if (value == stmt.value) return stmt;
+        return at(stmt, new Statement.Return(stmt.keyword, value));
+    }
+
+    public Statement visit(Statement.FuncDef stmt) {
+        return funcDef(stmt);
+    }
+
+    Statement.FuncDef funcDef(Statement.FuncDef stmt) {
+        List<Statement> body = optimize(stmt.body);
+        if (body == stmt.body) return stmt;
+        Statement.FuncDef optimized = at(stmt, new Statement.FuncDef(stmt.name, stmt.params, body));
+        optimized.slot = stmt.slot;
+        optimized.slotCount = stmt.slotCount;
+        optimized.firstParam = stmt.firstParam;
+        optimized.escapes = stmt.escapes;
+        return optimized;
+    }
+
+    public Statement visit(Statement.Class stmt) {
+        List<Statement.FuncDef> methods = new ArrayList<>(stmt.methods.size());
+        boolean changed = false;
+        for (Statement.FuncDef method : stmt.methods) {
+            Statement.FuncDef optimized = funcDef(method);
+            methods.add(optimized);
+            changed |= optimized != method;
+        }
+        if (!changed) return stmt;
+        Statement.Class optimized = at(stmt, new Statement.Class(stmt.name, methods, stmt.superclass));
+        optimized.slot = stmt.slot;
+        return optimized;
+    }
+}
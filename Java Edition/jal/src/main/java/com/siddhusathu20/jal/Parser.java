@@ -5,11 +5,16 @@ import java.util.ArrayList;
 import java.util.List;
 
 public class Parser {
-    final List<Token> tokens;
+    // Tokens are pulled from the lexer as the parser looks at them. The ring keeps the previous token
+    // and up to two ahead of the current one; current and fetched count tokens from the start.
+    static final int LOOKAHEAD = 4;
+    final Lexer lexer;
+    final Token[] ring = new Token[LOOKAHEAD];
     int current = 0;
+    int fetched = 0;
 
-    Parser(List<Token> tokens) {
-        this.tokens = tokens;
+    Parser(Lexer lexer) {
+        this.lexer = lexer;
     }
 
     List<Statement> parse() {
@@ -35,7 +40,9 @@ public class Parser {
         if (next(TokenType.EQ))
             value = parseExpression();
         checkEOL();
-        return new Statement.LetStmt(name, value);
+        Statement stmt = new Statement.LetStmt(name, value);
+        stmt.line = name.line;
+        return stmt;
     }
 
     Statement.FuncDef parseFuncDef() {
@@ -85,7 +92,16 @@ public class Parser {
         return new Statement.Class(name, methods, superclass);
     }
 
+    // Every statement is tagged with the line it starts on
     Statement parseStatement() {
+        if (next(TokenType.EOL)) return parseStatement();
+        int line = peek().line;
+        Statement stmt = parseStatementKind();
+        if (stmt.line == 0) stmt.line = line;
+        return stmt;
+    }
+
+    Statement parseStatementKind() {
         if (next(TokenType.CLASS)) return parseClass();
         if (next(TokenType.DEF)) return parseFuncDef();
         if (next(TokenType.RETURN)) return parseReturn();
@@ -95,9 +111,9 @@ public class Parser {
         if (next(TokenType.WHILE)) return parseWhileLoop();
         if (next(TokenType.DO)) return parseTimesLoop();
         if (next(TokenType.BREAK)) return parseBreak();
+        if (next(TokenType.CONTINUE)) return parseContinue();
         if (next(TokenType.FOR)) return parseForLoop();
         if (next(TokenType.L_BRACE)) return new Statement.Block(parseBlock());
-        if (next(TokenType.EOL)) return parseStatement();
         return parseExprStmt();
     }
 
@@ -117,7 +133,7 @@ public class Parser {
         Expression condition = parseExpression();
         consume(TokenType.DO, "Expected 'do' after 'while'");
         Statement body = parseStatement();
-        return new Statement.WhileLoop(condition, body);
+        return new Statement.WhileLoop(condition, body, null);
     }
 
     Statement parseTimesLoop() {
@@ -133,29 +149,33 @@ public class Parser {
         return new Statement.Break(keyword);
     }
 
+    Statement parseContinue() {
+        Token keyword = prev();
+        checkEOL();
+        return new Statement.Continue(keyword);
+    }
+
     Statement parseForLoop() {
+        int line = prev().line;
         consume(TokenType.L_BRACKET, "Expected '(' after 'for'");
         Statement init;
         if (next(TokenType.SEMICOLON)) init = null;
         else if (next(TokenType.LET)) init = parseVarDeclaration();
         else init = parseExprStmt();
         Expression condition = null;
-        if (!next(TokenType.SEMICOLON))
+        if (!check(TokenType.SEMICOLON))
             condition = parseExpression();
         consume(TokenType.SEMICOLON, "Expected ';' after for loop condition");
         Expression update = null;
-        if (!next(TokenType.R_BRACKET))
+        if (!check(TokenType.R_BRACKET))
             update = parseExpression();
         consume(TokenType.R_BRACKET, "Expected closing bracket )");
         Statement body = parseStatement();
-        if (update != null) {
-            body = new Statement.Block(
-                Arrays.asList(body, new Statement.ExprStmt(update))
-            );
-        }
         if (condition == null)
             condition = new Expression.Literal(true);
-        body = new Statement.WhileLoop(condition, body);
+        body = new Statement.WhileLoop(condition, body, update);
+        body.line = line;
+        if (init != null && init.line == 0) init.line = line;
         if (init != null)
             body = new Statement.Block(
                 Arrays.asList(init, body)
@@ -349,7 +369,7 @@ public class Parser {
 
     Token consume(TokenType type, String msg) {
         if (check(type)) return advance();
-        System.out.println(peek().toString());
+        Run.current().out.println(peek().toString());
         throw error(peek(), msg);
     }
 
@@ -431,7 +451,9 @@ public class Parser {
     }
 
     Token peek(int n) {
-        return tokens.get(current + n);
+        while (fetched <= current + n)
+            ring[fetched++ % LOOKAHEAD] = lexer.next();
+        return ring[(current + n) % LOOKAHEAD];
     }
 
     Token peek() {
@@ -439,7 +461,7 @@ public class Parser {
     }
 
     Token prev() {
-        return tokens.get(current - 1);
+        return ring[(current - 1) % LOOKAHEAD];
     }
 
     private class ParseError extends RuntimeException {}
@@ -0,0 +1,169 @@
+package com.siddhusathu20.jal;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.LockSupport;
+
+// Shows where a script spends its time (--profile). Every call to a JAL function is counted and
+// timed: inclusive time covers the callees, exclusive time does not. A daemon thread samples the
+// call stack and the line being run every SAMPLE_NANOS; the stacks are written as collapsed
+// stacks ("outer;inner count" per line), the format flamegraph.pl and speedscope read.
+class Profiler {
+    static final long SAMPLE_NANOS = 1_000_000;
+    // Rows shown in each table of the summary
+    static final int TOP = 10;
+
+    static class Entry {
+        final String name;
+        long calls = 0;
+        long inclusive = 0;
+        long exclusive = 0;
+        // Activations on the stack, so recursive calls add their inclusive time once
+        int active = 0;
+
+        Entry(String name) {
+            this.name = name;
+        }
+    }
+
+    final Map<Statement.FuncDef, Entry> entries = new IdentityHashMap<>();
+    final Entry script = new Entry("<script>");
+
+    // The JAL call stack. The sampler reads it without locking, so a sample taken mid-call may be
+    // one frame off, which sampling tolerates.
+    Entry[] stack = new Entry[64];
+    long[] starts = new long[64];
+    long[] children = new long[64];
+    int[] callers = new int[64];
+    int depth = 0;
+    // Set by the evaluator before each statement, and to a call's own line before a call it cannot
+    // pass the line to
+    int line = 0;
+
+    // Only touched by the sampler thread until it has been stopped
+    final Map<String, long[]> stacks = new HashMap<>();
+    final Map<Integer, long[]> lines = new HashMap<>();
+    long samples = 0;
+    Thread sampler = null;
+
+    void start() {
+        enter(script, line);
+        sampler = new Thread(this::sample, "jal-profiler");
+        sampler.setDaemon(true);
+        sampler.start();
+    }
+
+    // line is where the call is made, which may be below the line its statement starts on
+    void enter(Function function, int line) {
+        Entry entry = entries.get(function.declaration);
+        if (entry == null) {
+            Token name = function.declaration.name;
+            entry = new Entry(name.lexeme() + ":" + name.line);
+            entries.put(function.declaration, entry);
+        }
+        enter(entry, line);
+    }
+
+    void enter(Entry entry, int line) {
+        entry.calls++;
+        entry.active++;
+        if (depth == stack.length) {
+            int size = depth * 2;
+            starts = Arrays.copyOf(starts, size);
+            children = Arrays.copyOf(children, size);
+            callers = Arrays.copyOf(callers, size);
+            stack = Arrays.copyOf(stack, size);
+        }
+        stack[depth] = entry;
+        callers[depth] = line;
+        children[depth] = 0;
+        starts[depth] = System.nanoTime();
+        depth++;
+    }
+
+    void exit() {
+        long elapsed = System.nanoTime() - starts[depth - 1];
+        depth--;
+        Entry entry = stack[depth];
+        entry.exclusive += elapsed - children[depth];
+        if (--entry.active == 0) entry.inclusive += elapsed;
+        if (depth > 0) children[depth - 1] += elapsed;
+        line = callers[depth];
+    }
+
+    void sample() {
+        StringBuilder frames = new StringBuilder();
+        while (!Thread.currentThread().isInterrupted()) {
+            LockSupport.parkNanos(SAMPLE_NANOS);
+            Entry[] stack = this.stack;
+            int depth = Math.min(this.depth, stack.length);
+            frames.setLength(0);
+            for (int i = 0; i < depth; i++) {
+                Entry entry = stack[i];
+                if (entry == null) break;
+                if (i > 0) frames.append(';');
+                frames.append(entry.name);
+            }
+            if (frames.length() == 0) continue;
+            stacks.computeIfAbsent(frames.toString(), k -> new long[1])[0]++;
+            lines.computeIfAbsent(line, k -> new long[1])[0]++;
+            samples++;
+        }
+    }
+
+    // Closes the frames still open (after a runtime error there may be several), stops the sampler,
+    // writes the collapsed stacks and prints the summary
+    void finish(String path, PrintStream err) {
+        while (depth > 0) exit();
+        sampler.interrupt();
+        try {
+            sampler.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        String collapsed = path(path);
+        try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(Paths.get(collapsed)))) {
+            for (Map.Entry<String, long[]> stack : stacks.entrySet())
+                writer.println(stack.getKey() + " " + stack.getValue()[0]);
+        } catch (IOException e) {
+            err.println("Could not write profile to " + collapsed + ": " + e.getMessage());
+            collapsed = null;
+        }
+        report(err, collapsed);
+    }
+
+    void report(PrintStream err, String collapsed) {
+        err.println();
+        err.printf("Profile: %d samples, one every %d ms%s%n", samples, SAMPLE_NANOS / 1_000_000,
+            collapsed == null ? "" : ", stacks written to " + collapsed);
+        List<Entry> functions = new ArrayList<>(entries.values());
+        functions.add(script);
+        functions.sort((a, b) -> Long.compare(b.exclusive, a.exclusive));
+        err.printf("%12s %12s %12s  %s%n", "calls", "total ms", "self ms", "function");
+        for (Entry entry : functions.subList(0, Math.min(TOP, functions.size())))
+            err.printf("%12d %12.3f %12.3f  %s%n", entry.calls, entry.inclusive / 1e6, entry.exclusive / 1e6, entry.name);
+        List<Map.Entry<Integer, long[]>> hot = new ArrayList<>(lines.entrySet());
+        hot.sort((a, b) -> Long.compare(b.getValue()[0], a.getValue()[0]));
+        err.printf("%12s %12s  %s%n", "samples", "%", "line");
+        // Line 0 is time spent before the first statement, reading and parsing the script
+        for (Map.Entry<Integer, long[]> line : hot.subList(0, Math.min(TOP, hot.size())))
+            err.printf("%12d %12.1f  %s%n", line.getValue()[0], 100.0 * line.getValue()[0] / samples,
+                line.getKey() == 0 ? "(loading)" : line.getKey());
+    }
+
+    // Foo.jal -> Foo.collapsed
+    static String path(String source) {
+        if (source.endsWith(".jal")) source = source.substring(0, source.length() - 4);
+        return source + ".collapsed";
+    }
+}
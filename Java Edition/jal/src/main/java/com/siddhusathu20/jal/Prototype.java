@@ -0,0 +1,18 @@
+package com.siddhusathu20.jal;
+
+public class Prototype {
+    final String name;
+    final int arity;
+    final Chunk chunk = new Chunk();
+    int upvalueCount = 0;
+
+    Prototype(String name, int arity) {
+        this.name = name;
+        this.arity = arity;
+    }
+
+    @Override
+    public String toString() {
+        return "<func " + name + " >";
+    }
+}
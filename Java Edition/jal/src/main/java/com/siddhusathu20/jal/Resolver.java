@@ -6,14 +6,11 @@ import java.util.Map;
 import java.util.Stack;
 
 public class Resolver implements Expression.Visitor<Void>, Statement.Visitor<Void> {
-    final Evaluator evaluator;
-    final Stack<Map<String, Boolean>> scopes = new Stack<>();
+    final Stack<Scope> scopes = new Stack<>();
     FuncType currentFunc = FuncType.MAIN;
     ClassType currentClass = ClassType.MAIN;
-
-    Resolver(Evaluator evaluator) {
-        this.evaluator = evaluator;
-    }
+    int loopDepth = 0;
+    Statement.FuncDef currentDef = null;
 
     enum FuncType {
         MAIN, FUNCTION, METHOD, CONSTRUCTOR
@@ -23,15 +20,32 @@ public class Resolver implements Expression.Visitor<Void>, Statement.Visitor<Voi
         MAIN, CLASS, SUBCLASS
     }
 
+    static class Scope {
+        final Map<String, Boolean> defined = new HashMap<>();
+        final Map<String, Integer> slots = new HashMap<>();
+        int size = 0;
+
+        int slot(String name, boolean fresh) {
+            Integer slot = slots.get(name);
+            if (slot == null || fresh) {
+                slot = size++;
+                slots.put(name, slot);
+            }
+            return slot;
+        }
+    }
+
     public Void visit(Statement.Block stmt) {
         beginScope();
         resolve(stmt.statements);
+        stmt.slotCount = scopes.peek().size;
         endScope();
         return null;
     }
 
     public Void visit(Statement.FuncDef stmt) {
-        declare(stmt.name);
+        markEscape();
+        stmt.slot = declare(stmt.name);
         define(stmt.name);
         resolveFunc(stmt, FuncType.FUNCTION);
         return null;
@@ -40,34 +54,33 @@ public class Resolver implements Expression.Visitor<Void>, Statement.Visitor<Voi
     public Void visit(Statement.Class stmt) {
         ClassType enclosing = currentClass;
         currentClass = ClassType.CLASS;
-        declare(stmt.name);
+        markEscape();
+        stmt.slot = declare(stmt.name);
         define(stmt.name);
         if (stmt.superclass != null) {
-            if (stmt.name.lexeme.equals(stmt.superclass.name.lexeme))
+            if (stmt.name.lexeme().equals(stmt.superclass.name.lexeme()))
                 Main.error(stmt.name.line, "A class cannot inherit from itself");
             currentClass = ClassType.SUBCLASS;
             resolve(stmt.superclass);
         }
         if (stmt.superclass != null) {
             beginScope();
-            scopes.peek().put("super", true);
+            scopes.peek().defined.put("super", true);
+            scopes.peek().slot("super", true);
         }
-        beginScope();
-        scopes.peek().put("self", true);
         for (Statement.FuncDef method : stmt.methods) {
-            if (method.name.lexeme.equals("constructor"))
+            if (method.name.lexeme().equals("constructor"))
                 resolveFunc(method, FuncType.CONSTRUCTOR);
             else
                 resolveFunc(method, FuncType.METHOD);
         }
-        endScope();
         if (stmt.superclass != null) endScope();
         currentClass = enclosing;
         return null;
     }
 
     public Void visit(Statement.LetStmt stmt) {
-        declare(stmt.name);
+        stmt.slot = declare(stmt.name);
         if (stmt.value != null) resolve(stmt.value);
         define(stmt.name);
         return null;
@@ -82,13 +95,18 @@ public class Resolver implements Expression.Visitor<Void>, Statement.Visitor<Voi
 
     public Void visit(Statement.WhileLoop stmt) {
         resolve(stmt.condition);
+        loopDepth++;
         resolve(stmt.body);
+        loopDepth--;
+        if (stmt.update != null) resolve(stmt.update);
         return null;
     }
 
     public Void visit(Statement.TimesLoop stmt) {
         resolve(stmt.count);
+        loopDepth++;
         resolve(stmt.body);
+        loopDepth--;
         return null;
     }
 
@@ -109,6 +127,14 @@ public class Resolver implements Expression.Visitor<Void>, Statement.Visitor<Voi
     }
 
     public Void visit(Statement.Break stmt) {
+        if (loopDepth == 0)
+            Main.error(stmt.keyword.line, "Unexpected 'break' statement");
+        return null;
+    }
+
+    public Void visit(Statement.Continue stmt) {
+        if (loopDepth == 0)
+            Main.error(stmt.keyword.line, "Unexpected 'continue' statement");
         return null;
     }
 
@@ -173,7 +199,7 @@ public class Resolver implements Expression.Visitor<Void>, Statement.Visitor<Voi
     }
 
     public Void visit(Expression.Variable expr) {
-        if (!scopes.isEmpty() && scopes.peek().get(expr.name.lexeme) == Boolean.FALSE) {
+        if (!scopes.isEmpty() && scopes.peek().defined.get(expr.name.lexeme()) == Boolean.FALSE) {
             Main.error(expr.name.line, "Can't read a local variable in its own initialiser");
         }
         resolveLocal(expr, expr.name);
@@ -213,20 +239,23 @@ public class Resolver implements Expression.Visitor<Void>, Statement.Visitor<Voi
         return null;
     }
 
-    void declare(Token name) {
-        if (scopes.isEmpty()) return;
-        scopes.peek().put(name.lexeme, false);
+    int declare(Token name) {
+        if (scopes.isEmpty()) return -1;
+        scopes.peek().defined.put(name.lexeme(), false);
+        return scopes.peek().slot(name.lexeme(), false);
     }
 
     void define(Token name) {
         if (scopes.isEmpty()) return;
-        scopes.peek().put(name.lexeme, true);
+        scopes.peek().defined.put(name.lexeme(), true);
     }
 
-    void resolveLocal(Expression expr, Token name) {
+    void resolveLocal(Expression.Reference expr, Token name) {
         for (int i = scopes.size() - 1; i >= 0; i--) {
-            if (scopes.get(i).containsKey(name.lexeme)) {
-                evaluator.resolve(expr, scopes.size() - 1 - i);
+            Integer slot = scopes.get(i).slots.get(name.lexeme());
+            if (slot != null) {
+                expr.depth = scopes.size() - 1 - i;
+                expr.slot = slot;
                 return;
             }
         }
@@ -234,15 +263,32 @@ public class Resolver implements Expression.Visitor<Void>, Statement.Visitor<Voi
 
     void resolveFunc(Statement.FuncDef stmt, FuncType type) {
         FuncType enclosingFunc = currentFunc;
+        int enclosingLoops = loopDepth;
+        Statement.FuncDef enclosingDef = currentDef;
         currentFunc = type;
+        loopDepth = 0;
+        currentDef = stmt;
         beginScope();
+        if (type == FuncType.METHOD || type == FuncType.CONSTRUCTOR) {
+            scopes.peek().defined.put("self", true);
+            scopes.peek().slot("self", true);
+            stmt.firstParam = 1;
+        }
         for (Token param : stmt.params) {
-            declare(param);
+            scopes.peek().slot(param.lexeme(), true);
             define(param);
         }
         resolve(stmt.body);
+        stmt.slotCount = scopes.peek().size;
         endScope();
         currentFunc = enclosingFunc;
+        loopDepth = enclosingLoops;
+        currentDef = enclosingDef;
+    }
+
+    // Functions and classes declared in a body close over its environment
+    void markEscape() {
+        if (currentDef != null) currentDef.escapes = true;
     }
 
     void resolve(List<Statement> statements) {
@@ -260,7 +306,7 @@ public class Resolver implements Expression.Visitor<Void>, Statement.Visitor<Voi
     }
 
     void beginScope() {
-        scopes.push(new HashMap<String, Boolean>());
+        scopes.push(new Scope());
     }
 
     void endScope() {
@@ -0,0 +1,85 @@
+package com.siddhusathu20.jal;
+
+import java.util.ArrayDeque;
+
+// A JAL string built by '+' that defers copying until its contents are needed. JAL strings are
+// either a String or a Rope, so code handling them tests for CharSequence.
+public class Rope implements CharSequence {
+    // Concatenations up to this length produce a plain String
+    static final int SHORT = 64;
+
+    CharSequence left;
+    CharSequence right;
+    final int length;
+    String flat = null;
+
+    Rope(CharSequence left, CharSequence right) {
+        this.left = left;
+        this.right = right;
+        this.length = left.length() + right.length();
+    }
+
+    static CharSequence concat(CharSequence left, CharSequence right) {
+        if (left.length() == 0) return right;
+        if (right.length() == 0) return left;
+        if (left.length() + right.length() <= SHORT)
+            return left.toString() + right.toString();
+        return new Rope(left, right);
+    }
+
+    // String value of a JAL value that may be a rope, for comparisons
+    static Object flatten(Object value) {
+        if (value instanceof Rope) return value.toString();
+        return value;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        return toString().charAt(index);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return toString().subSequence(start, end);
+    }
+
+    // Walks the tree with an explicit stack, as ropes built in loops are deep
+    @Override
+    public String toString() {
+        if (flat != null) return flat;
+        StringBuilder builder = new StringBuilder(length);
+        ArrayDeque<CharSequence> pending = new ArrayDeque<>();
+        pending.push(this);
+        while (!pending.isEmpty()) {
+            CharSequence part = pending.pop();
+            if (part instanceof Rope && ((Rope) part).flat == null) {
+                Rope rope = (Rope) part;
+                pending.push(rope.right);
+                pending.push(rope.left);
+            } else {
+                builder.append(part.toString());
+            }
+        }
+        flat = builder.toString();
+        left = null;
+        right = null;
+        return flat;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) return true;
+        if (!(obj instanceof CharSequence)) return false;
+        return toString().equals(obj.toString());
+    }
+
+    @Override
+    public int hashCode() {
+        return toString().hashCode();
+    }
+}
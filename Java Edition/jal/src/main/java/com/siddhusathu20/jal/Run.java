@@ -0,0 +1,180 @@
+package com.siddhusathu20.jal;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.util.List;
+
+// Options, streams and error state of one script run. The command line makes one run; the daemon
+// makes one per request, each on its own thread with the client's streams. The lexer, parser,
+// resolver and compiler report through Main.error, which finds the run of the calling thread.
+class Run {
+    static final ThreadLocal<Run> current = ThreadLocal.withInitial(Run::new);
+
+    String path = null;
+    boolean useVM = false;
+    boolean unbuffered = false;
+    boolean stream = false;
+    boolean useCache = true;
+    int optimize = 1;
+    boolean profile = false;
+    // --stats prints to stderr; --stats=FILE writes JSON to FILE instead
+    boolean stats = false;
+    String statsPath = null;
+
+    boolean errored = false;
+    boolean runtimeErrored = false;
+    // Set while the script runs; with --stream a compile error can follow output still in its buffer
+    volatile Evaluator evaluator = null;
+    volatile boolean cancelled = false;
+
+    InputStream in = System.in;
+    Charset inCharset = Charset.defaultCharset();
+    PrintStream out = System.out;
+    PrintStream err = System.err;
+
+    static Run current() {
+        return current.get();
+    }
+
+    // Reads the command line; file names are taken relative to dir when one is given. Returns why
+    // the arguments are wrong, or null when they are fine.
+    String parse(String[] args, Path dir) {
+        for (String arg : args) {
+            if (arg.equals("--vm")) {
+                useVM = true;
+            } else if (arg.equals("--unbuffered")) {
+                unbuffered = true;
+            } else if (arg.equals("--stream")) {
+                stream = true;
+            } else if (arg.equals("--stats")) {
+                stats = true;
+            } else if (arg.startsWith("--stats=")) {
+                stats = true;
+                statsPath = resolve(dir, arg.substring("--stats=".length()));
+            } else if (arg.equals("--profile")) {
+                profile = true;
+            } else if (arg.equals("--no-cache")) {
+                useCache = false;
+            } else if (arg.equals("-O0") || arg.equals("-O1")) {
+                optimize = arg.charAt(2) - '0';
+            } else if (path == null && !arg.startsWith("-")) {
+                path = resolve(dir, arg);
+            } else {
+                path = null;
+                break;
+            }
+        }
+        if (path == null)
+            return "Incorrect usage!";
+        // The profiler follows the tree-walking evaluator's calls and statements
+        if (profile && useVM)
+            return "--profile cannot be used with --vm";
+        return null;
+    }
+
+    // Ends the run at its next statement, or in the VM its next loop or call; safe from any thread
+    void cancel() {
+        cancelled = true;
+        Evaluator evaluator = this.evaluator;
+        if (evaluator != null) evaluator.cancelled = true;
+    }
+
+    static String resolve(Path dir, String file) {
+        return dir == null ? file : dir.resolve(file).toString();
+    }
+
+    // Runs the script and returns the exit status: 65 for a compile error, 70 for a runtime error
+    int execute() throws IOException {
+        Run outer = current.get();
+        current.set(this);
+        try {
+            ByteBuffer bytes = Main.map(path);
+            Evaluator evaluator = new Evaluator(in, inCharset, out);
+            this.evaluator = evaluator;
+            if (cancelled) evaluator.cancelled = true;
+            evaluator.autoFlush = unbuffered;
+            // The VM keeps no counters of its own, so with --vm only time and GC are reported
+            Stats counters = stats ? new Stats() : null;
+            if (!useVM) evaluator.stats = counters;
+            if (profile) {
+                evaluator.profiler = new Profiler();
+                evaluator.profiler.start();
+            }
+            try {
+                if (stream) runEach(new Parser(new Lexer(Main.source(bytes))), evaluator);
+                else runAll(bytes, evaluator);
+            } finally {
+                evaluator.flush();
+                if (profile) evaluator.profiler.finish(path, err);
+                if (stats) counters.report(statsPath, !useVM, err);
+            }
+            if (errored) return 65;
+            if (runtimeErrored) return 70;
+            return 0;
+        } finally {
+            current.set(outer);
+        }
+    }
+
+    // Runs the whole script once it has been parsed and resolved, or loaded from its .jalc cache
+    void runAll(ByteBuffer bytes, Evaluator evaluator) throws IOException {
+        List<Statement> statements = useCache ? AstCache.load(path, bytes) : null;
+        List<Statement> resolved = null;
+        if (statements == null) {
+            statements = new Parser(new Lexer(Main.source(bytes))).parse();
+            if (errored) return;
+            Resolver resolver = new Resolver();
+            resolver.resolve(statements);
+            if (errored) return;
+            resolved = statements;
+        }
+        // The cache holds the tree as resolved, so it serves every optimization level
+        if (optimize > 0) statements = new Optimizer().optimize(statements);
+        if (useVM) {
+            Prototype script = new Compiler().compile(statements);
+            if (errored) return;
+            new VM(evaluator).interpret(script);
+        } else {
+            evaluator.interpret(statements);
+        }
+        // Only scripts that ran without errors are cached
+        if (useCache && resolved != null && !runtimeErrored) AstCache.store(path, bytes, resolved);
+    }
+
+    static final long STREAM_FLUSH_NANOS = 50_000_000;
+
+    // Parses, resolves and runs one top-level statement at a time, so output starts before the whole
+    // script has been read. Errors in later statements only surface once the earlier ones have run.
+    void runEach(Parser parser, Evaluator evaluator) {
+        Resolver resolver = new Resolver();
+        Optimizer optimizer = new Optimizer();
+        Compiler compiler = new Compiler();
+        VM vm = new VM(evaluator);
+        long flushed = System.nanoTime();
+        while (!parser.atEnd()) {
+            Statement stmt = parser.parseDeclaration();
+            if (errored) return;
+            List<Statement> statements = List.of(stmt);
+            resolver.resolve(statements);
+            if (errored) return;
+            if (optimize > 0) statements = optimizer.optimize(statements);
+            if (useVM) {
+                Prototype script = compiler.compile(statements);
+                if (errored) return;
+                vm.interpret(script);
+            } else {
+                evaluator.interpret(statements);
+            }
+            if (runtimeErrored) return;
+            // Output is flushed every so often rather than after each of what may be many small statements
+            if (System.nanoTime() - flushed > STREAM_FLUSH_NANOS) {
+                evaluator.flush();
+                flushed = System.nanoTime();
+            }
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.siddhusathu20.jal;
+
+import java.util.HashMap;
+import java.util.Map;
+
+// Field layout shared by instances that added the same fields in the same order. Each class has a
+// root shape; adding a field follows (or creates) a transition to the shape with that field appended.
+class Shape {
+    final Map<String, Integer> slots;
+    final int size;
+    Map<String, Shape> transitions = null;
+
+    Shape() {
+        this.slots = new HashMap<>();
+        this.size = 0;
+    }
+
+    Shape(Shape parent, String name) {
+        this.slots = new HashMap<>(parent.slots);
+        this.slots.put(name, parent.size);
+        this.size = parent.size + 1;
+    }
+
+    int indexOf(String name) {
+        Integer slot = slots.get(name);
+        if (slot == null) return -1;
+        return slot;
+    }
+
+    Shape with(String name) {
+        if (transitions == null) transitions = new HashMap<>();
+        Shape next = transitions.get(name);
+        if (next == null) {
+            next = new Shape(this, name);
+            transitions.put(name, next);
+        }
+        return next;
+    }
+}
@@ -10,18 +10,23 @@ abstract class Statement {
         R visit(IfStmt stmt);
         R visit(WhileLoop stmt);
         R visit(Break stmt);
+        R visit(Continue stmt);
         R visit(FuncDef stmt);
         R visit(Return stmt);
         R visit(TimesLoop stmt);
         R visit(Class stmt);
     }
 
+    // Line the statement starts on, kept for the profiler
+    int line = 0;
+
     abstract<R> R accept(Visitor<R> visitor);
 
     static class Class extends Statement {
         final Token name;
         final List<Statement.FuncDef> methods;
         final Expression.Variable superclass;
+        int slot = -1;
 
         Class(Token name, List<Statement.FuncDef> methods, Expression.Variable superclass) {
             this.name = name;
@@ -39,6 +44,12 @@ abstract class Statement {
         final Token name;
         final List<Token> params;
         final List<Statement> body;
+        int slot = -1;
+        int slotCount;
+        // Slot of the first parameter; methods hold self in slot 0
+        int firstParam = 0;
+        // True when a closure created in the body may outlive the call
+        boolean escapes = false;
 
         FuncDef(Token name, List<Token> params, List<Statement> body) {
             this.name = name;
@@ -85,12 +96,16 @@ abstract class Statement {
     }
 
     static class WhileLoop extends Statement {
+        // Null once the optimizer has found it always true
         final Expression condition;
         final Statement body;
+        // For loop update, run after each iteration including continued ones
+        final Expression update;
 
-        WhileLoop(Expression condition, Statement body) {
+        WhileLoop(Expression condition, Statement body, Expression update) {
             this.condition = condition;
             this.body = body;
+            this.update = update;
         }
 
         @Override
@@ -127,9 +142,23 @@ abstract class Statement {
         }
     }
 
+    static class Continue extends Statement {
+        final Token keyword;
+
+        Continue(Token keyword) {
+            this.keyword = keyword;
+        }
+
+        @Override
+        <R> R accept(Visitor<R> visitor) {
+            return visitor.visit(this);
+        }
+    }
+
 
     static class Block extends Statement {
         final List<Statement> statements;
+        int slotCount;
 
         Block(List<Statement> statements) {
             this.statements = statements;
@@ -157,6 +186,7 @@ abstract class Statement {
     static class LetStmt extends Statement {
         final Token name;
         final Expression value;
+        int slot = -1;
 
         LetStmt(Token name, Expression value) {
             this.name = name;
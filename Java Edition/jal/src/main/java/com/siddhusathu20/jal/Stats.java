@@ -0,0 +1,97 @@
+package com.siddhusathu20.jal;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+// Counters for --stats: what the evaluator allocated and called during a run, reported with the wall
+// time and the JVM's garbage collections over the same span, so interpreter efficiency can be
+// tracked across releases. The evaluator bumps the counters itself while its stats field is set.
+// GC figures are for the whole JVM, so under the daemon they include any runs alongside this one.
+class Stats {
+    long environments = 0;
+    long calls = 0;
+    long methodCalls = 0;
+    long binds = 0;
+    long arrays = 0;
+    long strings = 0;
+    int maxDepth = 0;
+
+    final long start = System.nanoTime();
+    final List<GarbageCollectorMXBean> collectors = ManagementFactory.getGarbageCollectorMXBeans();
+    final long startCollections = collections();
+    final long startCollectionMillis = collectionMillis();
+
+    // Length of the chain from env up to the globals
+    void depth(Environment env) {
+        int depth = 0;
+        for (Environment e = env; e.enclosing != null; e = e.enclosing) depth++;
+        if (depth > maxDepth) maxDepth = depth;
+    }
+
+    long collections() {
+        long total = 0;
+        for (GarbageCollectorMXBean collector : collectors) total += Math.max(0, collector.getCollectionCount());
+        return total;
+    }
+
+    long collectionMillis() {
+        long total = 0;
+        for (GarbageCollectorMXBean collector : collectors) total += Math.max(0, collector.getCollectionTime());
+        return total;
+    }
+
+    // Interpreter counters are left out when the run used the VM, which does not keep them
+    Map<String, Object> metrics(boolean counted) {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("wall_ms", (System.nanoTime() - start) / 1_000_000.0);
+        if (counted) {
+            metrics.put("environments", environments);
+            metrics.put("calls", calls);
+            metrics.put("method_calls", methodCalls);
+            metrics.put("binds", binds);
+            metrics.put("arrays", arrays);
+            metrics.put("strings", strings);
+            metrics.put("max_env_depth", maxDepth);
+        }
+        metrics.put("gc_collections", collections() - startCollections);
+        metrics.put("gc_ms", collectionMillis() - startCollectionMillis);
+        metrics.put("heap_used_bytes", ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed());
+        return metrics;
+    }
+
+    // Prints to err, or writes a JSON object to path when one was given
+    void report(String path, boolean counted, PrintStream err) {
+        Map<String, Object> metrics = metrics(counted);
+        if (path == null) {
+            err.println();
+            err.println("Stats:");
+            for (Map.Entry<String, Object> metric : metrics.entrySet())
+                err.printf("  %-16s %s%n", metric.getKey(), format(metric.getValue()));
+            return;
+        }
+        StringBuilder json = new StringBuilder("{");
+        for (Map.Entry<String, Object> metric : metrics.entrySet()) {
+            if (json.length() > 1) json.append(", ");
+            json.append('"').append(metric.getKey()).append("\": ").append(format(metric.getValue()));
+        }
+        json.append("}\n");
+        try {
+            Files.writeString(Paths.get(path), json);
+        } catch (IOException e) {
+            err.println("Could not write stats to " + path + ": " + e.getMessage());
+        }
+    }
+
+    static String format(Object value) {
+        if (value instanceof Double) return String.format(Locale.ROOT, "%.3f", (Double) value);
+        return value.toString();
+    }
+}
@@ -0,0 +1,48 @@
+package com.siddhusathu20.jal;
+
+// Identifiers seen by one lexer, looked up straight from a range of the source so that each distinct
+// name becomes a single String no matter how often it appears. Open addressing with linear probing.
+class Symbols {
+    String[] names = new String[256];
+    int size = 0;
+
+    String intern(CharSequence src, int start, int end) {
+        int hash = 0;
+        for (int i = start; i < end; i++)
+            hash = 31 * hash + src.charAt(i);
+        int mask = names.length - 1;
+        int i = mix(hash) & mask;
+        for (String name = names[i]; name != null; name = names[i]) {
+            if (name.hashCode() == hash && matches(name, src, start, end)) return name;
+            i = (i + 1) & mask;
+        }
+        String name = src.subSequence(start, end).toString();
+        names[i] = name;
+        if (++size * 2 > names.length) grow();
+        return name;
+    }
+
+    static int mix(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    static boolean matches(String name, CharSequence src, int start, int end) {
+        if (name.length() != end - start) return false;
+        for (int i = 0; i < name.length(); i++) {
+            if (name.charAt(i) != src.charAt(start + i)) return false;
+        }
+        return true;
+    }
+
+    void grow() {
+        String[] old = names;
+        names = new String[old.length * 2];
+        int mask = names.length - 1;
+        for (String name : old) {
+            if (name == null) continue;
+            int i = mix(name.hashCode()) & mask;
+            while (names[i] != null) i = (i + 1) & mask;
+            names[i] = name;
+        }
+    }
+}
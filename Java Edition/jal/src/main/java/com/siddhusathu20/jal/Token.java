@@ -2,20 +2,41 @@ package com.siddhusathu20.jal;
 
 public class Token {
     final TokenType type;
-    final String lexeme;
     final Object value;
     final int line;
+    // Numbers and strings keep their place in the source and only build the lexeme if asked for it
+    String lexeme;
+    final CharSequence src;
+    final int start;
+    final int end;
 
     Token(TokenType type, String lexeme, Object value, int line) {
         this.type = type;
         this.lexeme = lexeme;
         this.value = value;
         this.line = line;
+        this.src = null;
+        this.start = 0;
+        this.end = 0;
+    }
+
+    Token(TokenType type, CharSequence src, int start, int end, Object value, int line) {
+        this.type = type;
+        this.src = src;
+        this.start = start;
+        this.end = end;
+        this.value = value;
+        this.line = line;
+    }
+
+    String lexeme() {
+        if (lexeme == null) lexeme = src.subSequence(start, end).toString();
+        return lexeme;
     }
 
     public String toString() {
         if (type == TokenType.EOL || type == TokenType.EOF) return type + " in line " + line;
-        if (value == null) return type + " " + lexeme;
-        return type + " " + lexeme + ": " + value;
+        if (value == null) return type + " " + lexeme();
+        return type + " " + lexeme() + ": " + value;
     }
 }
@@ -15,7 +15,7 @@ public enum TokenType {
 
     NUMOF, STROF,
 
-    LET, IF, ELSE, THEN, FOR, WHILE, DO, BREAK, TIMES,
+    LET, IF, ELSE, THEN, FOR, WHILE, DO, BREAK, CONTINUE, TIMES,
     TRUE, FALSE, NONE, DEF, RETURN,
 
     CLASS, SELF, INHERITS, SUPER,
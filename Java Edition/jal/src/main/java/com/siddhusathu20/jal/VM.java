@@ -0,0 +1,575 @@
+package com.siddhusathu20.jal;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class VM {
+    static final OpCode[] OPS = OpCode.values();
+    static final int FRAMES_MAX = 1 << 14;
+
+    final Evaluator runtime;
+    final Map<String, Object> globals;
+    Object[] stack = new Object[1024];
+    int sp = 0;
+    Frame[] frames = new Frame[64];
+    int frameCount = 0;
+    Upvalue openUpvalues = null;
+
+    VM(Evaluator runtime) {
+        this.runtime = runtime;
+        this.globals = runtime.globals.vars;
+    }
+
+    static class Frame {
+        Closure closure;
+        int ip;
+        int base;
+    }
+
+    static class Closure {
+        final Prototype proto;
+        final Upvalue[] upvalues;
+
+        Closure(Prototype proto) {
+            this.proto = proto;
+            this.upvalues = new Upvalue[proto.upvalueCount];
+        }
+
+        @Override
+        public String toString() {
+            return proto.toString();
+        }
+    }
+
+    static class Upvalue {
+        int slot;
+        Object closed;
+        boolean isClosed = false;
+        Upvalue next;
+
+        Upvalue(int slot, Upvalue next) {
+            this.slot = slot;
+            this.next = next;
+        }
+    }
+
+    static class BoundMethod {
+        final Object receiver;
+        final Closure method;
+
+        BoundMethod(Object receiver, Closure method) {
+            this.receiver = receiver;
+            this.method = method;
+        }
+
+        @Override
+        public String toString() {
+            return method.toString();
+        }
+    }
+
+    static class VMClass {
+        final String name;
+        final Map<String, Closure> methods = new HashMap<>();
+
+        VMClass(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public String toString() {
+            return "<class " + name + ">";
+        }
+    }
+
+    static class VMInstance {
+        final VMClass cls;
+        final Map<String, Object> fields = new HashMap<>();
+
+        VMInstance(VMClass cls) {
+            this.cls = cls;
+        }
+
+        @Override
+        public String toString() {
+            return "<instance of " + cls.name + ">";
+        }
+    }
+
+    void interpret(Prototype script) {
+        try {
+            Closure closure = new Closure(script);
+            push(closure);
+            call(closure, 0);
+            run();
+        } catch (Evaluator.RuntimeError e) {
+            sp = 0;
+            frameCount = 0;
+            openUpvalues = null;
+            runtime.flush();
+            Main.runtimeError(e);
+        }
+    }
+
+    void run() {
+        Frame frame = frames[frameCount - 1];
+        byte[] code = frame.closure.proto.chunk.code;
+        List<Object> constants = frame.closure.proto.chunk.constants;
+        int ip = frame.ip;
+        while (true) {
+            OpCode op = OPS[code[ip++]];
+            switch (op) {
+                case CONSTANT:
+                    push(constants.get(((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff)));
+                    ip += 2;
+                    break;
+                case NONE:
+                    push(null);
+                    break;
+                case TRUE:
+                    push(true);
+                    break;
+                case FALSE:
+                    push(false);
+                    break;
+                case POP:
+                    stack[--sp] = null;
+                    break;
+                case GET_LOCAL:
+                    push(stack[frame.base + (code[ip++] & 0xff)]);
+                    break;
+                case SET_LOCAL:
+                    stack[frame.base + (code[ip++] & 0xff)] = stack[sp - 1];
+                    break;
+                case GET_UPVALUE: {
+                    Upvalue upvalue = frame.closure.upvalues[code[ip++] & 0xff];
+                    push(upvalue.isClosed ? upvalue.closed : stack[upvalue.slot]);
+                    break;
+                }
+                case SET_UPVALUE: {
+                    Upvalue upvalue = frame.closure.upvalues[code[ip++] & 0xff];
+                    if (upvalue.isClosed) upvalue.closed = stack[sp - 1];
+                    else stack[upvalue.slot] = stack[sp - 1];
+                    break;
+                }
+                case GET_GLOBAL: {
+                    String name = (String) constants.get(((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff));
+                    ip += 2;
+                    Object value = globals.get(name);
+                    if (value == null && !globals.containsKey(name))
+                        throw error(frame, ip, "Variable " + name + " not defined");
+                    push(value);
+                    break;
+                }
+                case DEFINE_GLOBAL: {
+                    String name = (String) constants.get(((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff));
+                    ip += 2;
+                    globals.put(name, stack[sp - 1]);
+                    stack[--sp] = null;
+                    break;
+                }
+                case SET_GLOBAL: {
+                    String name = (String) constants.get(((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff));
+                    ip += 2;
+                    if (!globals.containsKey(name))
+                        throw error(frame, ip, "Variable " + name + " not defined");
+                    globals.put(name, stack[sp - 1]);
+                    break;
+                }
+                case GET_PROPERTY: {
+                    String name = (String) constants.get(((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff));
+                    ip += 2;
+                    Object object = stack[sp - 1];
+                    if (!(object instanceof VMInstance))
+                        throw error(frame, ip, "Object has no accessible properties");
+                    VMInstance instance = (VMInstance) object;
+                    if (instance.fields.containsKey(name)) {
+                        stack[sp - 1] = instance.fields.get(name);
+                        break;
+                    }
+                    Closure method = instance.cls.methods.get(name);
+                    if (method == null)
+                        throw error(frame, ip, "Undefined property '" + name + "'");
+                    stack[sp - 1] = new BoundMethod(instance, method);
+                    break;
+                }
+                case SET_PROPERTY: {
+                    String name = (String) constants.get(((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff));
+                    ip += 2;
+                    Object object = stack[sp - 2];
+                    if (!(object instanceof VMInstance))
+                        throw error(frame, ip, "Object has no accessible properties");
+                    Object value = stack[--sp];
+                    ((VMInstance) object).fields.put(name, value);
+                    stack[sp - 1] = value;
+                    break;
+                }
+                case GET_SUPER: {
+                    String name = (String) constants.get(((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff));
+                    ip += 2;
+                    VMClass superclass = (VMClass) stack[--sp];
+                    Closure method = superclass.methods.get(name);
+                    if (method == null)
+                        throw error(frame, ip, "Undefined property '" + name + "'");
+                    stack[sp - 1] = new BoundMethod(stack[sp - 1], method);
+                    break;
+                }
+                case INDEX: {
+                    Object index = stack[--sp];
+                    Object object = stack[sp - 1];
+                    if (!(object instanceof JALArray))
+                        throw error(frame, ip, "Cannot index that object");
+                    JALArray array = (JALArray) object;
+                    stack[sp - 1] = array.get(checkIndex(frame, ip, array, index));
+                    break;
+                }
+                case SET_INDEX: {
+                    Object index = stack[--sp];
+                    Object value = stack[--sp];
+                    Object object = stack[sp - 1];
+                    if (!(object instanceof JALArray))
+                        throw error(frame, ip, "Cannot index that object");
+                    JALArray array = (JALArray) object;
+                    array.set(checkIndex(frame, ip, array, index), value);
+                    stack[sp - 1] = value;
+                    break;
+                }
+                case ARRAY: {
+                    int count = ((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff);
+                    ip += 2;
+                    JALArray elements = JALArray.of(Arrays.copyOfRange(stack, sp - count, sp));
+                    Arrays.fill(stack, sp - count, sp, null);
+                    sp -= count;
+                    push(elements);
+                    break;
+                }
+                case EQUAL: {
+                    Object right = stack[--sp];
+                    stack[sp - 1] = runtime.areEqual(stack[sp - 1], right);
+                    break;
+                }
+                case GREATER: {
+                    Object right = stack[--sp];
+                    Object left = stack[sp - 1];
+                    verifyNumbers(frame, ip, left, right);
+                    stack[sp - 1] = (double) left > (double) right;
+                    break;
+                }
+                case GREATER_EQUAL: {
+                    Object right = stack[--sp];
+                    Object left = stack[sp - 1];
+                    verifyNumbers(frame, ip, left, right);
+                    stack[sp - 1] = (double) left >= (double) right;
+                    break;
+                }
+                case LESS: {
+                    Object right = stack[--sp];
+                    Object left = stack[sp - 1];
+                    verifyNumbers(frame, ip, left, right);
+                    stack[sp - 1] = (double) left < (double) right;
+                    break;
+                }
+                case LESS_EQUAL: {
+                    Object right = stack[--sp];
+                    Object left = stack[sp - 1];
+                    verifyNumbers(frame, ip, left, right);
+                    stack[sp - 1] = (double) left <= (double) right;
+                    break;
+                }
+                case ADD: {
+                    Object right = stack[--sp];
+                    Object left = stack[sp - 1];
+                    if (left instanceof Double && right instanceof Double) {
+                        stack[sp - 1] = Evaluator.box((double) left + (double) right);
+                    } else if (left instanceof CharSequence && right instanceof CharSequence) {
+                        stack[sp - 1] = Rope.concat((CharSequence) left, (CharSequence) right);
+                    } else if (left instanceof JALArray && right instanceof JALArray) {
+                        stack[sp - 1] = ((JALArray) left).concat((JALArray) right);
+                    } else {
+                        throw error(frame, ip, "Invalid operand type(s) - Operands must be numbers, strings or arrays.");
+                    }
+                    break;
+                }
+                case SUBTRACT: {
+                    Object right = stack[--sp];
+                    Object left = stack[sp - 1];
+                    verifyNumbers(frame, ip, left, right);
+                    stack[sp - 1] = Evaluator.box((double) left - (double) right);
+                    break;
+                }
+                case MULTIPLY: {
+                    Object right = stack[--sp];
+                    Object left = stack[sp - 1];
+                    verifyNumbers(frame, ip, left, right);
+                    stack[sp - 1] = Evaluator.box((double) left * (double) right);
+                    break;
+                }
+                case DIVIDE: {
+                    Object right = stack[--sp];
+                    Object left = stack[sp - 1];
+                    verifyNumbers(frame, ip, left, right);
+                    if ((double) right == 0)
+                        throw error(frame, ip, "Division by zero");
+                    stack[sp - 1] = Evaluator.box((double) left / (double) right);
+                    break;
+                }
+                case MODULO: {
+                    Object right = stack[--sp];
+                    Object left = stack[sp - 1];
+                    verifyNumbers(frame, ip, left, right);
+                    if ((double) right == 0)
+                        throw error(frame, ip, "Division by zero");
+                    stack[sp - 1] = Evaluator.box((double) left % (double) right);
+                    break;
+                }
+                case NOT:
+                    stack[sp - 1] = !runtime.isTrue(stack[sp - 1]);
+                    break;
+                case NEGATE:
+                    if (!(stack[sp - 1] instanceof Double))
+                        throw error(frame, ip, "Invalid operand type - operand must be a number.");
+                    stack[sp - 1] = Evaluator.box(- (double) stack[sp - 1]);
+                    break;
+                case NUMOF: {
+                    Object value = stack[sp - 1];
+                    if (value instanceof CharSequence) {
+                        try {
+                            stack[sp - 1] = Double.parseDouble(value.toString());
+                        } catch (Exception e) {
+                            throw error(frame, ip, "Cannot convert \"" + value + "\" to a number");
+                        }
+                    } else if (!(value instanceof Double)) {
+                        throw error(frame, ip, "Invalid typecast");
+                    }
+                    break;
+                }
+                case STROF:
+                    stack[sp - 1] = runtime.stringCast(stack[sp - 1]);
+                    break;
+                case JUMP:
+                    ip += (((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff)) + 2;
+                    break;
+                case JUMP_IF_FALSE:
+                    if (runtime.isTrue(stack[sp - 1])) ip += 2;
+                    else ip += (((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff)) + 2;
+                    break;
+                case LOOP:
+                    if (runtime.cancelled) throw error(frame, ip, "Run cancelled");
+                    ip += 2 - (((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff));
+                    break;
+                case CALL: {
+                    if (runtime.cancelled) throw error(frame, ip, "Run cancelled");
+                    int argc = code[ip++] & 0xff;
+                    frame.ip = ip;
+                    callValue(stack[sp - 1 - argc], argc);
+                    frame = frames[frameCount - 1];
+                    code = frame.closure.proto.chunk.code;
+                    constants = frame.closure.proto.chunk.constants;
+                    ip = frame.ip;
+                    break;
+                }
+                case INVOKE: {
+                    String name = (String) constants.get(((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff));
+                    int argc = code[ip + 2] & 0xff;
+                    ip += 3;
+                    frame.ip = ip;
+                    invoke(name, argc);
+                    frame = frames[frameCount - 1];
+                    code = frame.closure.proto.chunk.code;
+                    constants = frame.closure.proto.chunk.constants;
+                    ip = frame.ip;
+                    break;
+                }
+                case CLOSURE: {
+                    Prototype proto = (Prototype) constants.get(((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff));
+                    ip += 2;
+                    Closure closure = new Closure(proto);
+                    for (int i = 0; i < proto.upvalueCount; i++) {
+                        boolean isLocal = code[ip++] == 1;
+                        int index = code[ip++] & 0xff;
+                        if (isLocal)
+                            closure.upvalues[i] = captureUpvalue(frame.base + index);
+                        else
+                            closure.upvalues[i] = frame.closure.upvalues[index];
+                    }
+                    push(closure);
+                    break;
+                }
+                case CLOSE_UPVALUE:
+                    closeUpvalues(sp - 1);
+                    stack[--sp] = null;
+                    break;
+                case RETURN: {
+                    Object result = stack[--sp];
+                    closeUpvalues(frame.base);
+                    frameCount--;
+                    Arrays.fill(stack, frame.base, sp, null);
+                    sp = frame.base;
+                    if (frameCount == 0) return;
+                    push(result);
+                    frame = frames[frameCount - 1];
+                    code = frame.closure.proto.chunk.code;
+                    constants = frame.closure.proto.chunk.constants;
+                    ip = frame.ip;
+                    break;
+                }
+                case CLASS: {
+                    String name = (String) constants.get(((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff));
+                    ip += 2;
+                    push(new VMClass(name));
+                    break;
+                }
+                case INHERIT: {
+                    Object superclass = stack[sp - 2];
+                    if (!(superclass instanceof VMClass))
+                        throw error(frame, ip, "Can only inherit from a class");
+                    VMClass subclass = (VMClass) stack[--sp];
+                    subclass.methods.putAll(((VMClass) superclass).methods);
+                    stack[sp] = null;
+                    break;
+                }
+                case METHOD: {
+                    String name = (String) constants.get(((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff));
+                    ip += 2;
+                    Closure method = (Closure) stack[--sp];
+                    stack[sp] = null;
+                    ((VMClass) stack[sp - 1]).methods.put(name, method);
+                    break;
+                }
+            }
+        }
+    }
+
+    void callValue(Object callee, int argc) {
+        if (callee instanceof Closure) {
+            call((Closure) callee, argc);
+            return;
+        }
+        if (callee instanceof BoundMethod) {
+            BoundMethod bound = (BoundMethod) callee;
+            stack[sp - 1 - argc] = bound.receiver;
+            call(bound.method, argc);
+            return;
+        }
+        if (callee instanceof VMClass) {
+            VMClass cls = (VMClass) callee;
+            stack[sp - 1 - argc] = new VMInstance(cls);
+            Closure constructor = cls.methods.get("constructor");
+            if (constructor != null) {
+                call(constructor, argc);
+            } else if (argc != 0) {
+                throw error("Expected 0 arguments but got " + argc);
+            }
+            return;
+        }
+        if (callee instanceof Callable) {
+            Callable func = (Callable) callee;
+            if (argc != func.getArgc())
+                throw error("Expected " + func.getArgc() + " arguments but got " + argc);
+            Object[] args = Arrays.copyOfRange(stack, sp - argc, sp);
+            Object result;
+            try {
+                result = func.call(runtime, args);
+            } catch (Evaluator.RuntimeError e) {
+                if (e.token != null) throw e;
+                throw error(e.getMessage());
+            }
+            Arrays.fill(stack, sp - argc - 1, sp, null);
+            sp -= argc + 1;
+            push(result);
+            return;
+        }
+        throw error("Calls are only valid for functions");
+    }
+
+    void invoke(String name, int argc) {
+        Object receiver = stack[sp - 1 - argc];
+        if (!(receiver instanceof VMInstance))
+            throw error("Object has no accessible properties");
+        VMInstance instance = (VMInstance) receiver;
+        if (instance.fields.containsKey(name)) {
+            Object field = instance.fields.get(name);
+            stack[sp - 1 - argc] = field;
+            callValue(field, argc);
+            return;
+        }
+        Closure method = instance.cls.methods.get(name);
+        if (method == null)
+            throw error("Undefined property '" + name + "'");
+        call(method, argc);
+    }
+
+    void call(Closure closure, int argc) {
+        if (argc != closure.proto.arity)
+            throw error("Expected " + closure.proto.arity + " arguments but got " + argc);
+        if (frameCount == FRAMES_MAX)
+            throw error("Stack overflow");
+        if (frameCount == frames.length)
+            frames = Arrays.copyOf(frames, frameCount * 2);
+        Frame frame = frames[frameCount];
+        if (frame == null) {
+            frame = new Frame();
+            frames[frameCount] = frame;
+        }
+        frameCount++;
+        frame.closure = closure;
+        frame.ip = 0;
+        frame.base = sp - argc - 1;
+    }
+
+    Upvalue captureUpvalue(int slot) {
+        Upvalue prev = null;
+        Upvalue upvalue = openUpvalues;
+        while (upvalue != null && upvalue.slot > slot) {
+            prev = upvalue;
+            upvalue = upvalue.next;
+        }
+        if (upvalue != null && upvalue.slot == slot) return upvalue;
+        Upvalue created = new Upvalue(slot, upvalue);
+        if (prev == null) openUpvalues = created;
+        else prev.next = created;
+        return created;
+    }
+
+    void closeUpvalues(int last) {
+        while (openUpvalues != null && openUpvalues.slot >= last) {
+            Upvalue upvalue = openUpvalues;
+            upvalue.closed = stack[upvalue.slot];
+            upvalue.isClosed = true;
+            openUpvalues = upvalue.next;
+        }
+    }
+
+    void push(Object value) {
+        if (sp == stack.length)
+            stack = Arrays.copyOf(stack, sp * 2);
+        stack[sp++] = value;
+    }
+
+    void verifyNumbers(Frame frame, int ip, Object left, Object right) {
+        if (left instanceof Double && right instanceof Double) return;
+        throw error(frame, ip, "Invalid operand type(s) - operands must be numbers.");
+    }
+
+    // Errors raised while the current frame's ip is stored in the frame
+    int checkIndex(Frame frame, int ip, JALArray array, Object index) {
+        if (!(index instanceof Double && (Double) index % 1 == 0))
+            throw error(frame, ip, "Invalid index");
+        double i = (double) index;
+        if (i < 0 || i >= array.size)
+            throw error(frame, ip, "Index out of bounds");
+        return (int) i;
+    }
+
+    Evaluator.RuntimeError error(String msg) {
+        Frame frame = frames[frameCount - 1];
+        return error(frame, frame.ip, msg);
+    }
+
+    Evaluator.RuntimeError error(Frame frame, int ip, String msg) {
+        int line = frame.closure.proto.chunk.getLine(ip - 1);
+        return new Evaluator.RuntimeError(new Token(TokenType.EOF, "", null, line), msg);
+    }
+}